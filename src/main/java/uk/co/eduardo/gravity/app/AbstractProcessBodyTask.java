@@ -19,10 +19,15 @@ public abstract class AbstractProcessBodyTask implements ProcessBodyTask
 
    private final Settings settings;
 
-   private Body[] output;
+   private final Body[] output;
+
+   private final boolean buffered;
+
+   private final List< MergeEvent > merges = new ArrayList<>();
 
    /**
-    * Initializes a new ProcessBodyTask object. This takes a copy of the input.
+    * Initializes a new ProcessBodyTask object. This takes a copy of the input, unless the input is a {@link BodyBuffers}, in which
+    * case the task reads its front buffer in place and writes into its back buffer.
     *
     * @param input the list of bodies to process.
     * @param settings the applicaiton settings.
@@ -30,6 +35,14 @@ public abstract class AbstractProcessBodyTask implements ProcessBodyTask
    public AbstractProcessBodyTask( final List< Body > input, final Settings settings )
    {
       this.settings = settings;
+      if( input instanceof BodyBuffers )
+      {
+         this.input = input;
+         this.output = ( (BodyBuffers) input ).getBack();
+         this.buffered = true;
+         return;
+      }
+
       if( ( input == null ) || ( input.size() == 0 ) )
       {
          this.input = Collections.emptyList();
@@ -41,14 +54,23 @@ public abstract class AbstractProcessBodyTask implements ProcessBodyTask
 
       this.output = new Body[ this.input.size() ];
       Arrays.fill( this.output, null );
+      this.buffered = false;
    }
 
    /**
     * {@inheritDoc}
+    *
+    * @throws IllegalStateException if the input is a {@link BodyBuffers}, since its output is taken by {@link BodyBuffers#swap()}
+    *            instead.
     */
    @Override
    public final List< Body > getOutput()
    {
+      if( this.buffered )
+      {
+         throw new IllegalStateException();
+      }
+
       final List< Body > list = new ArrayList<>( this.output.length );
       for( final Body body : this.output )
       {
@@ -60,6 +82,15 @@ public abstract class AbstractProcessBodyTask implements ProcessBodyTask
       return Collections.unmodifiableList( list );
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final List< MergeEvent > getMerges()
+   {
+      return Collections.unmodifiableList( this.merges );
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -85,6 +116,20 @@ public abstract class AbstractProcessBodyTask implements ProcessBodyTask
     */
    protected abstract void execute( Extent extent, List< Body > in, Body[] out );
 
+   /**
+    * Records that one body absorbed all of the mass of another. This may be called from any thread.
+    *
+    * @param absorber the identifier of the body that absorbed the other.
+    * @param absorbed the identifier of the body that was absorbed.
+    */
+   protected final void merged( final long absorber, final long absorbed )
+   {
+      synchronized( this.merges )
+      {
+         this.merges.add( new MergeEvent( this, absorber, absorbed ) );
+      }
+   }
+
    /**
     * @return the application configuration settings.
     */
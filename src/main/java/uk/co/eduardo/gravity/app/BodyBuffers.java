@@ -0,0 +1,183 @@
+package uk.co.eduardo.gravity.app;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import uk.co.eduardo.gravity.math.Body;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.ParallelCompaction;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * The bodies of a simulation held in two buffers that are swapped after every stage, so that a step does not allocate any lists
+ * or arrays of bodies.
+ * <p>
+ * This list is a view of the front buffer, which holds the current bodies. A task given this list as its input reads the front
+ * buffer in place and writes its output into the back buffer, instead of copying its input and allocating an output array. Once
+ * the task has finished, {@link #swap()} removes the bodies the task dropped and makes its output the front buffer. The removal
+ * is a {@link ParallelCompaction}, so it runs on all the threads of the executor and keeps the bodies in order.
+ * <p>
+ * A {@link BodyIndex} finds the slot of a body in the front buffer from its identifier. Each swap updates only the identifiers of
+ * the bodies that the task removed or moved to another slot, including by reordering.
+ * <p>
+ * The view changes with every swap, so anything that holds on to the bodies past the end of a stage, such as a display, must take
+ * a copy. Swapping is not thread-safe.
+ *
+ * @author Ed
+ */
+public class BodyBuffers extends AbstractList< Body > implements RandomAccess
+{
+   private final PartitionExecutor executor;
+
+   private final ParallelCompaction< Body > compaction;
+
+   private final BodyIndex index = new BodyIndex();
+
+   private final Body[] front;
+
+   private final Body[] back;
+
+   private int size;
+
+   /**
+    * Initializes a new BodyBuffers object.
+    *
+    * @param bodies the initial bodies, which are copied into the front buffer.
+    * @param executor the executor on which to swap the buffers.
+    */
+   public BodyBuffers( final List< Body > bodies, final PartitionExecutor executor )
+   {
+      this.executor = executor;
+      this.compaction = new ParallelCompaction<>( executor );
+      this.size = bodies.size();
+      this.front = bodies.toArray( new Body[ this.size ] );
+      this.back = new Body[ this.size ];
+      for( int i = 0; i < this.size; i++ )
+      {
+         this.index.put( this.front[ i ].id, i );
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Body get( final int index )
+   {
+      if( ( index < 0 ) || ( index >= this.size ) )
+      {
+         throw new IndexOutOfBoundsException();
+      }
+      return this.front[ index ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return this.size;
+   }
+
+   /**
+    * Gets the back buffer, into which a task writes its output. Every element is <code>null</code> until a task writes to it, and
+    * it is at least as long as the front buffer.
+    *
+    * @return the back buffer.
+    */
+   public Body[] getBack()
+   {
+      return this.back;
+   }
+
+   /**
+    * Gets the slot of the front buffer that holds a body.
+    *
+    * @param id the identifier of the body.
+    * @return the slot, or -1 if there is no body with the identifier.
+    */
+   public int getSlot( final long id )
+   {
+      return this.index.get( id );
+   }
+
+   /**
+    * Makes the back buffer the front buffer, leaving out the elements that were not written, and clears the back buffer.
+    * <p>
+    * The bodies are compacted from the back buffer into the front buffer, which the task has finished reading, so the arrays
+    * themselves stay where they are.
+    */
+   public void swap()
+   {
+      final int previous = this.size;
+      if( previous == 0 )
+      {
+         return;
+      }
+      final Extent all = new Extent( 0, previous - 1 );
+
+      // Forget the bodies the task removed or replaced with others, before their slots in the front buffer are overwritten.
+      this.executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( int i = extent.getFirst(); i <= extent.getLast(); i++ )
+            {
+               final Body body = BodyBuffers.this.back[ i ];
+               final long id = BodyBuffers.this.front[ i ].id;
+               if( ( body == null ) || ( body.id != id ) )
+               {
+                  BodyBuffers.this.index.remove( id );
+               }
+            }
+         }
+      } );
+
+      final int count = this.compaction.compact( this.back, previous, this.front );
+      final int[] mapping = this.compaction.getMapping();
+
+      // No identifiers are created, so the index never grows and each thread can update the bodies that it moved.
+      this.executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( int i = extent.getFirst(); i <= extent.getLast(); i++ )
+            {
+               final int slot = mapping[ i ];
+               if( slot >= 0 )
+               {
+                  final long id = BodyBuffers.this.front[ slot ].id;
+                  if( BodyBuffers.this.index.get( id ) != slot )
+                  {
+                     BodyBuffers.this.index.put( id, slot );
+                  }
+               }
+            }
+            Arrays.fill( BodyBuffers.this.back, extent.getFirst(), extent.getLast() + 1, null );
+            if( extent.getLast() >= count )
+            {
+               Arrays.fill( BodyBuffers.this.front, Math.max( count, extent.getFirst() ), extent.getLast() + 1, null );
+            }
+         }
+      } );
+      this.size = count;
+      this.modCount++;
+   }
+
+   /**
+    * Gets where each body went in the last swap. The body that was at index <code>i</code> of the back buffer is now at the index
+    * given by element <code>i</code>, or was removed if that is -1.
+    *
+    * @return the mapping from indices in the back buffer to indices in the front buffer.
+    */
+   public int[] getMapping()
+   {
+      return this.compaction.getMapping();
+   }
+}
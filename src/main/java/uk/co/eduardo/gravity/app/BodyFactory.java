@@ -6,6 +6,10 @@ import uk.co.eduardo.gravity.math.Body;
 
 /**
  * Creates bodies.
+ * <p>
+ * Each body is given an identifier when it is created, which it keeps for the rest of the simulation. The identifiers count up
+ * from zero in the order in which the bodies are created, so they are unique among the bodies created by one call and can be used
+ * to index an array.
  *
  * @author Ed
  */
@@ -0,0 +1,94 @@
+package uk.co.eduardo.gravity.app;
+
+import java.util.Arrays;
+
+/**
+ * Finds the slot that holds a body from its identifier in constant time.
+ * <p>
+ * The slots are kept in an array indexed by identifier. This suits the identifiers given out by a {@link BodyFactory}, which
+ * count up from zero and are never reused, so the array is no longer than the number of bodies that were created. Whatever moves
+ * the bodies between slots updates only the identifiers whose slots changed.
+ * <p>
+ * The slots of different identifiers may be updated on different threads at the same time, provided that none of the updates
+ * needs the index to grow.
+ *
+ * @author Ed
+ */
+public class BodyIndex
+{
+   private static final int MaxIdentifiers = Integer.MAX_VALUE - 8;
+
+   private int[] slots;
+
+   /**
+    * Initializes a new, empty BodyIndex object.
+    */
+   public BodyIndex()
+   {
+      this( 0 );
+   }
+
+   /**
+    * Initializes a new, empty BodyIndex object with room for identifiers from zero up to a limit before it has to grow.
+    *
+    * @param capacity the number of identifiers.
+    */
+   public BodyIndex( final int capacity )
+   {
+      if( ( capacity < 0 ) || ( capacity > MaxIdentifiers ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.slots = new int[ capacity ];
+      Arrays.fill( this.slots, -1 );
+   }
+
+   /**
+    * Gets the slot that holds a body.
+    *
+    * @param id the identifier of the body.
+    * @return the slot, or -1 if there is no body with the identifier.
+    */
+   public int get( final long id )
+   {
+      if( ( id < 0 ) || ( id >= this.slots.length ) )
+      {
+         return -1;
+      }
+      return this.slots[ (int) id ];
+   }
+
+   /**
+    * Records the slot that holds a body.
+    *
+    * @param id the identifier of the body.
+    * @param slot the slot.
+    */
+   public void put( final long id, final int slot )
+   {
+      if( ( id < 0 ) || ( id >= MaxIdentifiers ) || ( slot < 0 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      if( id >= this.slots.length )
+      {
+         final int length = this.slots.length;
+         this.slots = Arrays.copyOf( this.slots, (int) Math.min( MaxIdentifiers, Math.max( id + 1, 2L * length ) ) );
+         Arrays.fill( this.slots, length, this.slots.length, -1 );
+      }
+      this.slots[ (int) id ] = slot;
+   }
+
+   /**
+    * Forgets a body that no longer exists.
+    *
+    * @param id the identifier of the body.
+    */
+   public void remove( final long id )
+   {
+      if( ( id >= 0 ) && ( id < this.slots.length ) )
+      {
+         this.slots[ (int) id ] = -1;
+      }
+   }
+}
@@ -0,0 +1,84 @@
+package uk.co.eduardo.gravity.app;
+
+/**
+ * The bodies collided by a {@link CollisionResolver}, by index, however they are held. The resolver only changes the mass and
+ * radius of a body, and tells the bodies about each body that it swallows whole.
+ *
+ * @author Ed
+ */
+public interface CollidingBodies
+{
+   /**
+    * @return the number of bodies.
+    */
+   int size();
+
+   /**
+    * @param body the index of the body.
+    * @return the identifier of the body.
+    */
+   long getId( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the mass of the body in kilograms.
+    */
+   double getMass( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param mass the new mass of the body in kilograms.
+    */
+   void setMass( int body, double mass );
+
+   /**
+    * @param body the index of the body.
+    * @return the density of the body in kilograms/metre<sup>2</sup>.
+    */
+   double getDensity( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the radius of the body in metres.
+    */
+   double getRadius( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param radius the new radius of the body in metres.
+    */
+   void setRadius( int body, double radius );
+
+   /**
+    * @param body the index of the body.
+    * @return the x coordinate of the body in metres.
+    */
+   double getX( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the y coordinate of the body in metres.
+    */
+   double getY( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the x component of the velocity of the body in metres/second.
+    */
+   double getVelocityX( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the y component of the velocity of the body in metres/second.
+    */
+   double getVelocityY( int body );
+
+   /**
+    * Records that one body absorbed all of the mass of another.
+    *
+    * @param body the index of the body being resolved when it happened.
+    * @param absorber the identifier of the body that absorbed the other.
+    * @param absorbed the identifier of the body that was absorbed.
+    */
+   void merged( int body, long absorber, long absorbed );
+}
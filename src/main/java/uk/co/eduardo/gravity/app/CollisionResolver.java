@@ -0,0 +1,285 @@
+package uk.co.eduardo.gravity.app;
+
+import uk.co.eduardo.gravity.spatial.BroadPhase;
+import uk.co.eduardo.gravity.spatial.IntList;
+import uk.co.eduardo.gravity.spatial.SweptCircle;
+
+/**
+ * Collides bodies with every body that might overlap them, merging the mass of the smaller body into the larger one. The bodies are
+ * read and changed through {@link CollidingBodies}, so the same resolver serves mutable bodies and bodies in a store.
+ * <p>
+ * A {@link BroadPhase} finds the bodies close enough to overlap each body, so that it is not compared with every other body.
+ * Collisions move mass but never bodies, so the broad phase stays valid while the bodies are resolved. A body can grow as it merges,
+ * though, so the most any body found by range has grown is tracked and a body looks further out when it, or that growth, has
+ * passed the reach it searched. The pairs are visited in the same order as comparing every body with every other.
+ * <p>
+ * Bodies are assumed to have just moved in a straight line by their velocity times the time step, as they do in every iteration.
+ * Two bodies that do not overlap may still have passed through each other during that step, which is found with a
+ * {@link SweptCircle} test and treated as the smaller body being swallowed by the larger. This lets the time step be raised without
+ * losing mergers.
+ * <p>
+ * A resolver may be restricted to the bodies of one cluster, in which case bodies from other clusters are ignored, and it can
+ * record the largest radius each body reaches. Each body that is swallowed whole is recorded as a merge with the bodies. A resolver
+ * is not thread-safe, but resolvers working on separate clusters may run at the same time.
+ *
+ * @author Ed
+ */
+public final class CollisionResolver
+{
+   private final CollidingBodies bodies;
+
+   private final BroadPhase broadPhase;
+
+   private final int[] cluster;
+
+   private final double[] peak;
+
+   private final int timeStep;
+
+   private final double maxTravel;
+
+   private final IntList candidates = new IntList();
+
+   private double growth;
+
+   /**
+    * Initializes a new CollisionResolver object that collides every body with every other.
+    *
+    * @param bodies the bodies, in the order known to the broad phase.
+    * @param broadPhase the broad phase.
+    * @param timeStep the number of seconds simulated by each iteration.
+    */
+   public CollisionResolver( final CollidingBodies bodies, final BroadPhase broadPhase, final int timeStep )
+   {
+      this( bodies, broadPhase, null, null, timeStep );
+   }
+
+   /**
+    * Initializes a new CollisionResolver object.
+    *
+    * @param bodies the bodies, in the order known to the broad phase.
+    * @param broadPhase the broad phase.
+    * @param cluster the cluster of each body, or <code>null</code> to collide every body with every other.
+    * @param peak where the largest radius each body reaches is recorded, or <code>null</code>.
+    * @param timeStep the number of seconds simulated by each iteration.
+    */
+   public CollisionResolver( final CollidingBodies bodies,
+                             final BroadPhase broadPhase,
+                             final int[] cluster,
+                             final double[] peak,
+                             final int timeStep )
+   {
+      this.bodies = bodies;
+      this.broadPhase = broadPhase;
+      this.cluster = cluster;
+      this.peak = peak;
+      this.timeStep = timeStep;
+
+      double max = 0;
+      for( int i = 0; i < bodies.size(); i++ )
+      {
+         if( broadPhase.contains( i ) )
+         {
+            max = Math.max( max, travel( i ) );
+         }
+      }
+      this.maxTravel = max;
+   }
+
+   /**
+    * Collides a body with every body that might overlap it, in index order.
+    *
+    * @param i1 the index of the body.
+    */
+   public void resolve( final int i1 )
+   {
+      if( this.bodies.getMass( i1 ) <= 0 )
+      {
+         return;
+      }
+
+      // Bodies that passed through each other may be further apart than their radii by how far they both moved.
+      final double travel = travel( i1 ) + this.maxTravel;
+      double reach = this.bodies.getRadius( i1 ) + this.growth + travel;
+      this.broadPhase.query( i1, reach, this.candidates );
+      int previous = -1;
+      int k = 0;
+      while( true )
+      {
+         if( previous >= 0 )
+         {
+            grown( i1 );
+            grown( previous );
+         }
+
+         // If either body has grown past the reach that was searched, search again further out and carry on after the last body
+         // compared. The reach at least doubles so that a body that keeps growing does not search again every time.
+         if( ( this.bodies.getRadius( i1 ) + this.growth + travel ) > reach )
+         {
+            reach = Math.max( this.bodies.getRadius( i1 ) + this.growth + travel, 2 * reach );
+            this.broadPhase.query( i1, reach, this.candidates );
+            k = 0;
+            while( ( k < this.candidates.size() ) && ( this.candidates.get( k ) <= previous ) )
+            {
+               k++;
+            }
+         }
+
+         if( k == this.candidates.size() )
+         {
+            break;
+         }
+
+         final int i2 = this.candidates.get( k++ );
+         if( ( this.cluster != null ) && ( this.cluster[ i2 ] != this.cluster[ i1 ] ) )
+         {
+            continue;
+         }
+         previous = i2;
+
+         if( this.bodies.getMass( i2 ) > 0 )
+         {
+            // Both bodies have mass going in, so a body with none afterwards was swallowed by this collision.
+            collide( i1, i2 );
+            if( this.bodies.getMass( i1 ) == 0 )
+            {
+               // A body that has been swallowed collides with nothing else.
+               this.bodies.merged( i1, this.bodies.getId( i2 ), this.bodies.getId( i1 ) );
+               grown( i1 );
+               grown( i2 );
+               break;
+            }
+            if( this.bodies.getMass( i2 ) == 0 )
+            {
+               this.bodies.merged( i1, this.bodies.getId( i1 ), this.bodies.getId( i2 ) );
+            }
+         }
+      }
+   }
+
+   /**
+    * Resolves the collision between two bodies, if they overlap.
+    */
+   private void collide( final int i1, final int i2 )
+   {
+      final double r1 = this.bodies.getRadius( i1 );
+      final double r2 = this.bodies.getRadius( i2 );
+
+      final double dx = this.bodies.getX( i1 ) - this.bodies.getX( i2 );
+      final double dy = this.bodies.getY( i1 ) - this.bodies.getY( i2 );
+      final double d = Math.sqrt( ( dx * dx ) + ( dy * dy ) );
+
+      // If they don't overlap, skip computation unless they passed through each other during the step
+      if( d >= ( r1 + r2 ) )
+      {
+         final double mx = ( this.bodies.getVelocityX( i1 ) - this.bodies.getVelocityX( i2 ) ) * this.timeStep;
+         final double my = ( this.bodies.getVelocityY( i1 ) - this.bodies.getVelocityY( i2 ) ) * this.timeStep;
+         if( SweptCircle.timeOfContact( dx, dy, mx, my, r1 + r2 ) <= 1 )
+         {
+            if( this.bodies.getMass( i1 ) < this.bodies.getMass( i2 ) )
+            {
+               absorb( i2, i1 );
+            }
+            else
+            {
+               absorb( i1, i2 );
+            }
+         }
+         return;
+      }
+
+      // The first may be entirely contained within the second
+      if( ( d + r1 ) <= r2 )
+      {
+         absorb( i2, i1 );
+         return;
+      }
+
+      // The second may be entirely contained within the first
+      if( ( d + r2 ) <= r1 )
+      {
+         absorb( i1, i2 );
+         return;
+      }
+
+      // Otherwise, there is partial overlap.
+      final double t = Math.PI * ( ( r1 * r1 ) + ( r2 * r2 ) );
+
+      final double c = -( ( t / Math.PI ) - ( d * d ) );
+      final double b = -( 2 * d );
+      final double a = 2;
+
+      // Solve for ar2 + br + c = 0
+      final double x1 = ( -b + Math.sqrt( ( b * b ) - ( 4 * a * c ) ) ) / ( 2 * a );
+      final double x2 = ( -b - Math.sqrt( ( b * b ) - ( 4 * a * c ) ) ) / ( 2 * a );
+
+      // x1 and x2 represent the new radii of the bodies. The body that was initially larger gets even larger and the body that was
+      // initially smaller gets even smaller.
+      if( this.bodies.getMass( i1 ) < this.bodies.getMass( i2 ) )
+      {
+         transfer( i1, i2, Math.min( x1, x2 ) );
+      }
+      else
+      {
+         transfer( i2, i1, Math.min( x1, x2 ) );
+      }
+   }
+
+   /**
+    * Shrinks the smaller of two partially overlapping bodies to a new radius, moving the mass it loses into the larger. If the new
+    * radius is negative, all of its mass moves.
+    */
+   private void transfer( final int smaller, final int larger, final double radius )
+   {
+      if( radius < 0 )
+      {
+         absorb( larger, smaller );
+         return;
+      }
+
+      final double smallerMass = Math.PI * radius * radius * this.bodies.getDensity( smaller );
+      final double largerMass = ( this.bodies.getMass( smaller ) - smallerMass ) + this.bodies.getMass( larger );
+
+      this.bodies.setMass( smaller, smallerMass );
+      this.bodies.setRadius( smaller, radius );
+      this.bodies.setMass( larger, largerMass );
+      this.bodies.setRadius( larger, Math.sqrt( ( largerMass / this.bodies.getDensity( larger ) ) / Math.PI ) );
+   }
+
+   /**
+    * Moves all of the mass of one body into another.
+    */
+   private void absorb( final int into, final int from )
+   {
+      final double mass = this.bodies.getMass( into ) + this.bodies.getMass( from );
+      this.bodies.setMass( into, mass );
+      this.bodies.setRadius( into, Math.sqrt( ( mass / this.bodies.getDensity( into ) ) / Math.PI ) );
+      this.bodies.setMass( from, 0 );
+   }
+
+   /**
+    * Gets how far a body moved during the last step.
+    */
+   private double travel( final int body )
+   {
+      final double velocityX = this.bodies.getVelocityX( body );
+      final double velocityY = this.bodies.getVelocityY( body );
+      return Math.sqrt( ( velocityX * velocityX ) + ( velocityY * velocityY ) ) * this.timeStep;
+   }
+
+   /**
+    * Tracks the most any body found by range has grown after a body may have grown.
+    */
+   private void grown( final int body )
+   {
+      final double radius = this.bodies.getRadius( body );
+      if( this.broadPhase.contains( body ) )
+      {
+         this.growth = Math.max( this.growth, radius - this.broadPhase.getRadius( body ) );
+      }
+      if( this.peak != null )
+      {
+         this.peak[ body ] = Math.max( this.peak[ body ], radius );
+      }
+   }
+}
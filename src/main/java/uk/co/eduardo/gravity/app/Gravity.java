@@ -4,6 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
@@ -16,10 +17,12 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
 
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.force.ForceSolvers;
 import uk.co.eduardo.gravity.math.Body;
 import uk.co.eduardo.gravity.math.Vector2;
+import uk.co.eduardo.gravity.spatial.SpaceFillingCurve;
 import uk.co.eduardo.gravity.task.DefaultPartitionExecutor;
-import uk.co.eduardo.gravity.task.Extent;
 import uk.co.eduardo.gravity.task.PartitionExecutor;
 
 /**
@@ -34,35 +37,50 @@ public class Gravity
     */
    public static void main( final String[] args )
    {
-      final Settings settings = new Settings( 10_000, 100, 5, 500, 10_000d, 1_000d, 1_000, true, true );
+      final Settings settings = new Settings( 10_000, 100, 5, 500, 10_000d, 1_000d, 1_000, true, true )
+                                        .setTimeStep( Integer.getInteger( Settings.TimeStepProperty, 1 ).intValue() );
       final PartitionExecutor executor = DefaultPartitionExecutor.getInstance();
+      final ForceSolver solver = ForceSolvers.fromSystemProperty( executor );
+      final int reorderInterval = SpaceFillingCurve.reorderIntervalFromSystemProperty();
+      final SpaceFillingCurve curve = SpaceFillingCurve.fromSystemProperty();
 
       try
       {
          final DisplayComponent ui = initializeUI( settings );
-         final List< Body > bodies = createInitialBodies( settings );
+         final BodyBuffers bodies = new BodyBuffers( createInitialBodies( settings ), executor );
 
          final long start = System.nanoTime();
 
          for( int i = 0; i < settings.getIterationCount(); i++ )
          {
-            List< Body > list = bodies;
             ProcessBodyTask task;
 
-            // task = new ProcessCollisionsTask( list, settings );
-            // executor.partitionTask( Extent.from( list ), task );
-            // list = task.getOutput();
+            task = new ProcessCollisionsTask( bodies, settings );
+            executor.partitionTask( task.getExtent(), task );
+            bodies.swap();
+            MergeEvent.raise( task.getMerges() );
 
-            task = new ProcessEscapedTask( list, settings );
-            executor.partitionTask( Extent.from( list ), task );
-            list = task.getOutput();
+            task = new ProcessEscapedTask( bodies, settings );
+            executor.partitionTask( task.getExtent(), task );
+            bodies.swap();
 
-            task = new ProcessResultantForceTask( list, settings );
-            executor.partitionTask( Extent.from( list ), task );
-            list = task.getOutput();
+            if( ( reorderInterval > 0 ) && ( ( i % reorderInterval ) == 0 ) )
+            {
+               task = new ProcessReorderTask( bodies, settings, curve, executor );
+               executor.partitionTask( task.getExtent(), task );
+               bodies.swap();
+            }
 
-            bodies.clear();
-            bodies.addAll( list );
+            if( solver == null )
+            {
+               task = new ProcessResultantForceTask( bodies, settings );
+            }
+            else
+            {
+               task = new ProcessSolverForceTask( bodies, settings, solver );
+            }
+            executor.partitionTask( task.getExtent(), task );
+            bodies.swap();
 
             System.out.printf( "%d\t%d\t%d\n", i, ( i / settings.getIterationsPerUpdate() ) + 1, bodies.size() ); //$NON-NLS-1$
 
@@ -75,7 +93,8 @@ public class Gravity
             if( ( i % settings.getIterationsPerUpdate() ) == 0 )
             {
                System.out.println( i / ( ( System.nanoTime() - start ) / 1_000_000_000d ) );
-               updateUI( ui, list );
+               // The buffers are reused by the next iteration, so the display needs a copy.
+               updateUI( ui, new ArrayList<>( bodies ) );
                // Thread.sleep( settings.getFrameDelay() );
             }
          }
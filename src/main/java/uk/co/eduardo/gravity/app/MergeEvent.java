@@ -0,0 +1,74 @@
+package uk.co.eduardo.gravity.app;
+
+import java.util.EventObject;
+import java.util.List;
+
+import uk.co.eduardo.gravity.event.EventContext;
+
+/**
+ * Records that one body absorbed all of the mass of another during a collision, and so the other body no longer exists. The
+ * bodies are given by their identifiers, since neither keeps its position in the list of bodies.
+ * <p>
+ * Tasks record their merges as they run, on whichever threads they run on, and the application raises them afterwards on its own
+ * {@link EventContext}.
+ *
+ * @author Ed
+ */
+public class MergeEvent extends EventObject
+{
+   private final long absorber;
+
+   private final long absorbed;
+
+   /**
+    * Initializes a new MergeEvent object.
+    *
+    * @param source the task that merged the bodies.
+    * @param absorber the identifier of the body that absorbed the other.
+    * @param absorbed the identifier of the body that was absorbed.
+    */
+   public MergeEvent( final Object source, final long absorber, final long absorbed )
+   {
+      super( source );
+      this.absorber = absorber;
+      this.absorbed = absorbed;
+   }
+
+   /**
+    * @return the identifier of the body that absorbed the other.
+    */
+   public long getAbsorber()
+   {
+      return this.absorber;
+   }
+
+   /**
+    * @return the identifier of the body that was absorbed.
+    */
+   public long getAbsorbed()
+   {
+      return this.absorbed;
+   }
+
+   /**
+    * Raises merge events on the event context of the current thread.
+    *
+    * @param merges the merges to raise.
+    */
+   public static void raise( final List< MergeEvent > merges )
+   {
+      for( final MergeEvent merge : merges )
+      {
+         EventContext.raise( merge );
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return this.absorber + " absorbed " + this.absorbed; //$NON-NLS-1$
+   }
+}
@@ -25,9 +25,10 @@ public class OrbitalBodyFactory implements BodyFactory
       final Random rng = new Random();
       final Vector2 centre = new Vector2( settings.getSpaceExtent(), settings.getSpaceExtent() );
       final List< Body > bodies = new ArrayList<>();
+      long id = 0;
 
       // Add a large body at the centre
-      final Body centralBody = new Body( settings.getMaxMass() * 100, settings.getDensity(), centre, Vector2.Zero );
+      final Body centralBody = new Body( id++, settings.getMaxMass() * 100, settings.getDensity(), centre, Vector2.Zero );
       bodies.add( centralBody );
 
       for( int i = 0; i < settings.getBodyCount(); i++ )
@@ -40,7 +41,7 @@ public class OrbitalBodyFactory implements BodyFactory
          final Vector2 position = new Vector2( centre.x + ( distanceFromCentre * Math.cos( angle ) ),
                                                centre.y + ( distanceFromCentre * Math.sin( angle ) ) );
 
-         final Body temp = new Body( mass, settings.getDensity(), position, Vector2.Zero );
+         final Body temp = new Body( id, mass, settings.getDensity(), position, Vector2.Zero );
 
          // We give it an initial velocity so that it is in orbit around the central body
          final double v0 = Math.sqrt( ( Constants.G * ( mass + centralBody.mass ) ) / distanceFromCentre );
@@ -50,7 +51,7 @@ public class OrbitalBodyFactory implements BodyFactory
 
          // Scale it by the velocity and rotate 90 degrees
          final Vector2 v = Matrix2.rotation( Math.PI / 2 ).mul( unitDir.mul( v0 ) );
-         bodies.add( new Body( mass, settings.getDensity(), position, v ) );
+         bodies.add( new Body( id++, mass, settings.getDensity(), position, v ) );
       }
       return bodies;
    }
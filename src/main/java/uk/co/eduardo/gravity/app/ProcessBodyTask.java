@@ -24,4 +24,12 @@ public interface ProcessBodyTask extends ExtentTask
     * @return the output, processed bodies.
     */
    List< Body > getOutput();
+
+   /**
+    * Gets the merges between bodies that happened during the task. This will only contain any content after the task has been
+    * run.
+    *
+    * @return the merges, in no particular order.
+    */
+   List< MergeEvent > getMerges();
 }
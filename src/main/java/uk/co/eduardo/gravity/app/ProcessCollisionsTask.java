@@ -4,15 +4,33 @@ import java.util.List;
 
 import uk.co.eduardo.gravity.math.Body;
 import uk.co.eduardo.gravity.math.Vector2;
+import uk.co.eduardo.gravity.spatial.HierarchicalGrid;
+import uk.co.eduardo.gravity.spatial.IntList;
+import uk.co.eduardo.gravity.spatial.SweptCircle;
 import uk.co.eduardo.gravity.task.Extent;
 
 /**
  * Task that processes collisions between bodies.
+ * <p>
+ * The bodies are binned into a {@link HierarchicalGrid} when the task is created, so each body is only compared with the bodies
+ * close enough to overlap it rather than with every other body, however much the sizes of the bodies vary.
+ * <p>
+ * Bodies are assumed to have just moved in a straight line by their velocity times the time step. Two bodies that do not overlap
+ * may still have passed through each other during that step, which is found with a {@link SweptCircle} test and treated as the
+ * smaller body being swallowed by the larger.
+ * <p>
+ * A body that loses so much mass that it is removed is recorded as merged into the most massive of the bodies that took its mass.
  *
  * @author Ed
  */
 public class ProcessCollisionsTask extends AbstractProcessBodyTask
 {
+   private final HierarchicalGrid grid = new HierarchicalGrid();
+
+   private final int timeStep;
+
+   private double maxTravel;
+
    /**
     * Initializes a new ProcessCollisionsTask object.
     *
@@ -22,6 +40,28 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
    public ProcessCollisionsTask( final List< Body > input, final Settings settings )
    {
       super( input, settings );
+
+      final int count = getExtent().getLength();
+      final double[] x = new double[ count ];
+      final double[] y = new double[ count ];
+      final double[] radius = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         final Body body = input.get( i );
+         x[ i ] = body.position.x;
+         y[ i ] = body.position.y;
+         radius[ i ] = body.radius;
+      }
+      this.grid.build( x, y, radius, count );
+
+      this.timeStep = settings.getTimeStep();
+      for( int i = 0; i < count; i++ )
+      {
+         if( this.grid.contains( i ) )
+         {
+            this.maxTravel = Math.max( this.maxTravel, travel( input.get( i ) ) );
+         }
+      }
    }
 
    /**
@@ -30,21 +70,23 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
    @Override
    protected void execute( final Extent extent, final List< Body > in, final Body[] out )
    {
+      final IntList candidates = new IntList();
+
       // We only calculate the collisions for the extent.
       for( final int i1 : extent )
       {
          double massGain = 0;
          Vector2 velocityGain = Vector2.Zero;
-
-         // However, for each of the bodies within the extent, we still have to compare it to every other body
-         for( final int i2 : Extent.from( in ) )
+         int absorber = -1;
+
+         // However, for each of the bodies within the extent, we still have to compare it to every other body that could overlap
+         // it. The candidates come back in index order, so the gains are summed in the same order as comparing against every body.
+         // Bodies that passed through each other may be further apart than their radii by how far they both moved.
+         final Body body1 = in.get( i1 );
+         this.grid.query( i1, body1.radius + travel( body1 ) + this.maxTravel, candidates );
+         for( int k = 0; k < candidates.size(); k++ )
          {
-            // Don't compute collision against itself
-            if( i1 == i2 )
-            {
-               continue;
-            }
-
+            final int i2 = candidates.get( k );
             final Body b1 = in.get( i1 );
             final Body b2 = in.get( i2 );
 
@@ -53,9 +95,30 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
 
             final double d = b1.position.sub( b2.position ).l2norm();
 
-            // If they don't overlap, skip computation
+            // If they don't overlap, skip computation unless they passed through each other during the step, in which case the
+            // smaller is swallowed by the larger.
             if( d >= ( r1 + r2 ) )
             {
+               if( SweptCircle.timeOfContact( b1.position.x - b2.position.x,
+                                              b1.position.y - b2.position.y,
+                                              ( b1.velocity.x - b2.velocity.x ) * this.timeStep,
+                                              ( b1.velocity.y - b2.velocity.y ) * this.timeStep,
+                                              r1 + r2 ) > 1 )
+               {
+                  continue;
+               }
+
+               if( ( b1.mass < b2.mass ) || ( ( b1.mass == b2.mass ) && ( i1 > i2 ) ) )
+               {
+                  massGain -= b1.mass;
+                  absorber = absorber( in, absorber, i2 );
+               }
+               else
+               {
+                  final Vector2 totalMomentum = b2.velocity.mul( b2.mass ).add( b1.velocity.mul( b1.mass ) );
+                  massGain += b2.mass;
+                  velocityGain = velocityGain.add( totalMomentum.div( b1.mass + b2.mass ).sub( b1.velocity ) );
+               }
                continue;
             }
 
@@ -64,6 +127,7 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
             {
                // Add all of the mass of the first into the second and adjust for conservation of momentum.
                massGain -= b1.mass;
+               absorber = absorber( in, absorber, i2 );
                continue;
             }
 
@@ -98,6 +162,7 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
             {
                // Initially, b1 was smaller so it gets even smaller and b2 gains momentum
                final double newRadius = Math.min( x1, x2 );
+               absorber = absorber( in, absorber, i2 );
                // if the new radius is negative, all mass transfers to b2
                if( newRadius < 0 )
                {
@@ -137,8 +202,32 @@ public class ProcessCollisionsTask extends AbstractProcessBodyTask
          final Vector2 newVelocity = body.velocity.add( velocityGain );
          if( newMass >= 1 )
          {
-            out[ i1 ] = new Body( newMass, body.density, body.position, newVelocity );
+            out[ i1 ] = new Body( body.id, newMass, body.density, body.position, newVelocity );
+         }
+         else if( absorber >= 0 )
+         {
+            merged( in.get( absorber ).id, body.id );
          }
       }
    }
+
+   /**
+    * Gets which of two bodies that took mass from another is the more massive, and so absorbs it if it is removed.
+    */
+   private static int absorber( final List< Body > in, final int absorber, final int candidate )
+   {
+      if( ( absorber < 0 ) || ( in.get( candidate ).mass > in.get( absorber ).mass ) )
+      {
+         return candidate;
+      }
+      return absorber;
+   }
+
+   /**
+    * Gets how far a body moved during the last step.
+    */
+   private double travel( final Body body )
+   {
+      return body.velocity.l2norm() * this.timeStep;
+   }
 }
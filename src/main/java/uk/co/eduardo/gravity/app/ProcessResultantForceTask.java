@@ -33,7 +33,7 @@ public class ProcessResultantForceTask extends AbstractProcessBodyTask
       for( final int index : extent )
       {
          final Body body = in.get( index );
-         out[ index ] = body.applyForce( getNetForce( body, in ), 1 );
+         out[ index ] = body.applyForce( getNetForce( body, in ), getSettings().getTimeStep() );
       }
    }
 
@@ -24,6 +24,7 @@ public class RandomBodyFactory implements BodyFactory
       final Random rng = new Random();
       final Vector2 centre = new Vector2( settings.getSpaceExtent(), settings.getSpaceExtent() );
       final List< Body > bodies = new ArrayList<>();
+      long id = 0;
 
       for( int i = 0; i < settings.getBodyCount(); i++ )
       {
@@ -43,7 +44,7 @@ public class RandomBodyFactory implements BodyFactory
 
          // Scale it by the velocity
          final Vector2 v = unitDir.mul( v0 );
-         bodies.add( new Body( mass, settings.getDensity(), position, v ) );
+         bodies.add( new Body( id++, mass, settings.getDensity(), position, v ) );
       }
 
       return bodies;
@@ -25,6 +25,11 @@ public class Settings
 
    private static final boolean DefaultCreateInitialCentralBody = false;
 
+   private static final int DefaultTimeStep = 1;
+
+   /** The system property giving the number of seconds simulated by each iteration. */
+   public static final String TimeStepProperty = "timeStep"; //$NON-NLS-1$
+
    /** Default settings for the simulation. */
    public static final Settings Default = new Settings( DefaultIterationCount,
                                                         DefaultIterationsPerUpdate,
@@ -54,6 +59,8 @@ public class Settings
 
    private final boolean createInitialCentralBody;
 
+   private final int timeStep;
+
    /**
     * Initializes a new Settings object.
     *
@@ -76,6 +83,43 @@ public class Settings
                     final int bodyCount,
                     final boolean centreOnLargest,
                     final boolean createInitialCentralBody )
+   {
+      this( iterationCount,
+            iterationsPerUpdate,
+            frameDelay,
+            spaceExtent,
+            maxMass,
+            density,
+            bodyCount,
+            centreOnLargest,
+            createInitialCentralBody,
+            DefaultTimeStep );
+   }
+
+   /**
+    * Initializes a new Settings object.
+    *
+    * @param iterationCount the number of iterations for which the simulation should run.
+    * @param iterationsPerUpdate how many iterations to run for every screen update.
+    * @param frameDelay The number of milliseconds to pause after every screen update.
+    * @param spaceExtent the initial radius of the universe in metres.
+    * @param maxMass the maximum mass for randomly created initial bodies in kilograms.
+    * @param density default density for randonmy created initial bodies in kilograms / metres<sup>2</sup>.
+    * @param bodyCount the number of randomly generated bodies to create.
+    * @param centreOnLargest whether the view should remain centred on the most massive body.
+    * @param createInitialCentralBody whether a large central body should be created.
+    * @param timeStep the number of seconds simulated by each iteration.
+    */
+   public Settings( final int iterationCount,
+                    final int iterationsPerUpdate,
+                    final int frameDelay,
+                    final double spaceExtent,
+                    final double maxMass,
+                    final double density,
+                    final int bodyCount,
+                    final boolean centreOnLargest,
+                    final boolean createInitialCentralBody,
+                    final int timeStep )
    {
       this.iterationCount = iterationCount;
       this.iterationsPerUpdate = iterationsPerUpdate;
@@ -86,6 +130,7 @@ public class Settings
       this.bodyCount = bodyCount;
       this.centreOnLargest = centreOnLargest;
       this.createInitialCentralBody = createInitialCentralBody;
+      this.timeStep = timeStep;
    }
 
    /**
@@ -178,6 +223,16 @@ public class Settings
       return this.createInitialCentralBody;
    }
 
+   /**
+    * Gets the number of seconds simulated by each iteration. Bodies move by their velocity times this every iteration.
+    *
+    * @return the time step.
+    */
+   public int getTimeStep()
+   {
+      return this.timeStep;
+   }
+
    /**
     * @param iterationCount the number of iterations for which to run the simulation.
     * @return the updated settings.
@@ -192,7 +247,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -209,7 +265,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -226,7 +283,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -243,7 +301,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -260,7 +319,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -277,7 +337,8 @@ public class Settings
                            density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -294,7 +355,8 @@ public class Settings
                            this.density,
                            bodyCount,
                            this.centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -311,7 +373,8 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            centreOnLargest,
-                           this.createInitialCentralBody );
+                           this.createInitialCentralBody,
+                           this.timeStep );
    }
 
    /**
@@ -328,6 +391,25 @@ public class Settings
                            this.density,
                            this.bodyCount,
                            this.centreOnLargest,
-                           createInitialCentralBody );
+                           createInitialCentralBody,
+                           this.timeStep );
+   }
+
+   /**
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @return the updated settings.
+    */
+   public Settings setTimeStep( final int timeStep )
+   {
+      return new Settings( this.iterationCount,
+                           this.iterationsPerUpdate,
+                           this.frameDelay,
+                           this.spaceExtent,
+                           this.maxMass,
+                           this.density,
+                           this.bodyCount,
+                           this.centreOnLargest,
+                           this.createInitialCentralBody,
+                           timeStep );
    }
 }
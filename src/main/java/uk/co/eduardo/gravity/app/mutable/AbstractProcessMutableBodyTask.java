@@ -3,11 +3,15 @@ package uk.co.eduardo.gravity.app.mutable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
+import uk.co.eduardo.gravity.app.MergeEvent;
 import uk.co.eduardo.gravity.app.Settings;
 import uk.co.eduardo.gravity.math.mutable.Body;
 import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ParallelCompaction;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
 
 /**
  * A task that can be partitioned that will process the input list of bodies and create an output list of bodies.
@@ -20,7 +24,9 @@ public abstract class AbstractProcessMutableBodyTask implements ProcessMutableBo
 
    private final Settings settings;
 
-   private Body[] output;
+   private final Body[] output;
+
+   private final List< Merge > merges = new ArrayList<>();
 
    /**
     * Initializes a new ProcessBodyTask object. This takes a copy of the input.
@@ -53,7 +59,7 @@ public abstract class AbstractProcessMutableBodyTask implements ProcessMutableBo
       final List< Body > list = new ArrayList<>( this.output.length );
       for( final Body body : this.output )
       {
-         if( body != null )
+         if( keep( body ) )
          {
             list.add( body );
          }
@@ -61,6 +67,55 @@ public abstract class AbstractProcessMutableBodyTask implements ProcessMutableBo
       return list;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final List< Body > getOutput( final PartitionExecutor executor )
+   {
+      final ParallelCompaction< Body > compaction = new ParallelCompaction< Body >( executor )
+      {
+         @Override
+         protected boolean keep( final Body body )
+         {
+            return AbstractProcessMutableBodyTask.this.keep( body );
+         }
+      };
+      final Body[] compacted = new Body[ this.output.length ];
+      final int count = compaction.compact( this.output, this.output.length, compacted );
+      return Arrays.asList( compacted ).subList( 0, count );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final List< MergeEvent > getMerges()
+   {
+      final List< Merge > sorted;
+      synchronized( this.merges )
+      {
+         sorted = new ArrayList<>( this.merges );
+      }
+
+      // The sort is stable, and the merges for each body are recorded in order by the one thread that processes it.
+      Collections.sort( sorted, new Comparator< Merge >()
+      {
+         @Override
+         public int compare( final Merge m1, final Merge m2 )
+         {
+            return Integer.compare( m1.body, m2.body );
+         }
+      } );
+
+      final List< MergeEvent > events = new ArrayList<>( sorted.size() );
+      for( final Merge merge : sorted )
+      {
+         events.add( merge.event );
+      }
+      return Collections.unmodifiableList( events );
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -86,6 +141,45 @@ public abstract class AbstractProcessMutableBodyTask implements ProcessMutableBo
     */
    protected abstract void execute( Extent extent, List< Body > in, Body[] out );
 
+   /**
+    * Determines whether a body written to the output is kept in it. By default, every body that was written is kept.
+    *
+    * @param body the body, or <code>null</code> if none was written.
+    * @return <code>true</code> to keep the body; <code>false</code> to remove it.
+    */
+   protected boolean keep( final Body body )
+   {
+      return body != null;
+   }
+
+   /**
+    * Records that one body absorbed all of the mass of another. This may be called from any thread, but the merges recorded while
+    * processing any one body must all be recorded by the same thread, in the order they happened.
+    *
+    * @param body the index of the body being processed, by which the merges are ordered.
+    * @param absorber the identifier of the body that absorbed the other.
+    * @param absorbed the identifier of the body that was absorbed.
+    */
+   protected final void merged( final int body, final long absorber, final long absorbed )
+   {
+      final Merge merge = new Merge( body, new MergeEvent( this, absorber, absorbed ) );
+      synchronized( this.merges )
+      {
+         this.merges.add( merge );
+      }
+   }
+
+   /**
+    * Forgets the merges recorded so far, when the collisions are going to be resolved again.
+    */
+   protected final void clearMerges()
+   {
+      synchronized( this.merges )
+      {
+         this.merges.clear();
+      }
+   }
+
    /**
     * @return the application configuration settings.
     */
@@ -93,4 +187,20 @@ public abstract class AbstractProcessMutableBodyTask implements ProcessMutableBo
    {
       return this.settings;
    }
+
+   /**
+    * A merge along with the index of the body that was being processed when it happened.
+    */
+   private static final class Merge
+   {
+      private final int body;
+
+      private final MergeEvent event;
+
+      Merge( final int body, final MergeEvent event )
+      {
+         this.body = body;
+         this.event = event;
+      }
+   }
 }
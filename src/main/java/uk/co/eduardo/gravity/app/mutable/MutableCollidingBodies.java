@@ -0,0 +1,191 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.CollidingBodies;
+import uk.co.eduardo.gravity.app.CollisionResolver;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.BroadPhase;
+import uk.co.eduardo.gravity.spatial.SweptCircle;
+
+/**
+ * A list of mutable bodies collided by a {@link CollisionResolver}, which records the bodies that are swallowed whole with a task.
+ * It also has the measures of how the bodies moved that the tasks use to find the bodies that might collide.
+ *
+ * @author Ed
+ */
+final class MutableCollidingBodies implements CollidingBodies
+{
+   private final AbstractProcessMutableBodyTask task;
+
+   private final List< Body > bodies;
+
+   /**
+    * Initializes a new MutableCollidingBodies object.
+    *
+    * @param task the task with which to record the bodies that are swallowed whole.
+    * @param bodies the bodies.
+    */
+   MutableCollidingBodies( final AbstractProcessMutableBodyTask task, final List< Body > bodies )
+   {
+      this.task = task;
+      this.bodies = bodies;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return this.bodies.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getId( final int body )
+   {
+      return this.bodies.get( body ).id;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getMass( final int body )
+   {
+      return this.bodies.get( body ).mass;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setMass( final int body, final double mass )
+   {
+      this.bodies.get( body ).mass = mass;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getDensity( final int body )
+   {
+      return this.bodies.get( body ).density;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.bodies.get( body ).radius;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setRadius( final int body, final double radius )
+   {
+      this.bodies.get( body ).radius = radius;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getX( final int body )
+   {
+      return this.bodies.get( body ).position.x;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getY( final int body )
+   {
+      return this.bodies.get( body ).position.y;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityX( final int body )
+   {
+      return this.bodies.get( body ).velocity.x;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityY( final int body )
+   {
+      return this.bodies.get( body ).velocity.y;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void merged( final int body, final long absorber, final long absorbed )
+   {
+      this.task.merged( body, absorber, absorbed );
+   }
+
+   /**
+    * Gets the smallest distance between two bodies at any time during the last step.
+    *
+    * @param b1 the first body.
+    * @param b2 the second body.
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @return the distance of closest approach.
+    */
+   static double closestApproach( final Body b1, final Body b2, final int timeStep )
+   {
+      return SweptCircle.closestApproach( b1.position.x - b2.position.x,
+                                          b1.position.y - b2.position.y,
+                                          ( b1.velocity.x - b2.velocity.x ) * timeStep,
+                                          ( b1.velocity.y - b2.velocity.y ) * timeStep );
+   }
+
+   /**
+    * Gets how far a body moved during the last step.
+    *
+    * @param body the body.
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @return the distance moved.
+    */
+   static double travel( final Body body, final int timeStep )
+   {
+      return Math.sqrt( ( body.velocity.x * body.velocity.x ) + ( body.velocity.y * body.velocity.y ) ) * timeStep;
+   }
+
+   /**
+    * Gets the furthest any body found by range moved during the last step.
+    *
+    * @param bodies the bodies.
+    * @param broadPhase the broad phase.
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @return the largest distance moved.
+    */
+   static double maxTravel( final List< Body > bodies, final BroadPhase broadPhase, final int timeStep )
+   {
+      double max = 0;
+      for( int i = 0; i < bodies.size(); i++ )
+      {
+         if( broadPhase.contains( i ) )
+         {
+            max = Math.max( max, travel( bodies.get( i ), timeStep ) );
+         }
+      }
+      return max;
+   }
+}
@@ -20,11 +20,15 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
 
+import uk.co.eduardo.gravity.app.MergeEvent;
 import uk.co.eduardo.gravity.app.OrbitalBodyFactory;
 import uk.co.eduardo.gravity.app.RandomBodyFactory;
 import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.force.ForceSolvers;
 import uk.co.eduardo.gravity.math.mutable.Body;
 import uk.co.eduardo.gravity.math.mutable.Vector;
+import uk.co.eduardo.gravity.spatial.SpaceFillingCurve;
 import uk.co.eduardo.gravity.task.DefaultPartitionExecutor;
 import uk.co.eduardo.gravity.task.Extent;
 import uk.co.eduardo.gravity.task.PartitionExecutor;
@@ -41,8 +45,14 @@ public class MutableGravity
     */
    public static void main( final String[] args )
    {
-      final Settings settings = new Settings( 50_000_000, 20, 5, 500, 1_000_000d, 100_000d, 1_000, true, true );
+      final Settings settings = new Settings( 50_000_000, 20, 5, 500, 1_000_000d, 100_000d, 1_000, true, true )
+                                        .setTimeStep( Integer.getInteger( Settings.TimeStepProperty, 1 ).intValue() );
       final PartitionExecutor executor = DefaultPartitionExecutor.getInstance();
+      final ForceSolver solver = ForceSolvers.fromSystemProperty( executor );
+      final int reorderInterval = SpaceFillingCurve.reorderIntervalFromSystemProperty();
+      final SpaceFillingCurve curve = SpaceFillingCurve.fromSystemProperty();
+      final PersistentBroadPhase broadPhase = ProcessCollisionsTask.broadPhaseFromSystemProperty( settings );
+      final boolean mergeClusters = Boolean.getBoolean( ProcessClusterMergeTask.MergeClustersProperty );
 
       try
       {
@@ -56,21 +66,44 @@ public class MutableGravity
             List< Body > list = new ArrayList<>( bodies );
             ProcessMutableBodyTask task;
 
-            task = new ProcessCollisionsTask( list, settings );
-            // Run this single-threaded
-            executor.executeTask( new Extent[]
+            if( mergeClusters )
             {
-               Extent.from( list )
-            }, task );
-            list = task.getOutput();
+               task = broadPhase == null ? new ProcessClusterMergeTask( list, settings, executor )
+                                         : new ProcessClusterMergeTask( list, settings, executor, broadPhase );
+            }
+            else if( broadPhase == null )
+            {
+               task = new ProcessParallelCollisionsTask( list, settings, executor );
+            }
+            else
+            {
+               task = new ProcessParallelCollisionsTask( list, settings, executor, broadPhase );
+            }
+            executor.partitionTask( Extent.from( list ), task );
+            list = task.getOutput( executor );
+            MergeEvent.raise( task.getMerges() );
 
             task = new ProcessEscapedTask( list, settings );
             executor.partitionTask( Extent.from( list ), task );
-            list = task.getOutput();
+            list = task.getOutput( executor );
 
-            task = new ProcessResultantForceTask( list, settings );
+            if( ( reorderInterval > 0 ) && ( ( i % reorderInterval ) == 0 ) )
+            {
+               task = new ProcessReorderTask( list, settings, curve, executor );
+               executor.partitionTask( Extent.from( list ), task );
+               list = task.getOutput( executor );
+            }
+
+            if( solver == null )
+            {
+               task = new ProcessResultantForceTask( list, settings );
+            }
+            else
+            {
+               task = new ProcessSolverForceTask( list, settings, solver );
+            }
             executor.partitionTask( Extent.from( list ), task );
-            list = task.getOutput();
+            list = task.getOutput( executor );
 
             bodies.clear();
             bodies.addAll( list );
@@ -115,7 +148,8 @@ public class MutableGravity
       final List< Body > mutable = new ArrayList<>();
       for( final uk.co.eduardo.gravity.math.Body b : bodies )
       {
-         mutable.add( new Body( b.mass,
+         mutable.add( new Body( b.id,
+                                b.mass,
                                 b.density,
                                 new Vector( b.position.x, b.position.y ),
                                 new Vector( b.velocity.x, b.velocity.y ) ) );
@@ -0,0 +1,23 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.BroadPhase;
+
+/**
+ * A broad phase that is kept from one iteration to the next, so that work done in one iteration can be reused in the next.
+ * Bodies are matched up between iterations by identity, so bodies may be removed or the list reordered in between.
+ *
+ * @author Ed
+ */
+public interface PersistentBroadPhase extends BroadPhase
+{
+   /**
+    * Updates the broad phase to the current positions of the bodies. The positions must not be modified while the broad phase is
+    * in use, but the radii may change afterwards as long as the range of each query allows for it.
+    *
+    * @param bodies the bodies, which are referred to by their index in this list until the next update.
+    */
+   void update( List< Body > bodies );
+}
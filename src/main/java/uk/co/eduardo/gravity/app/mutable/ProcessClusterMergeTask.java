@@ -0,0 +1,157 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.BroadPhase;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Task that merges every cluster of overlapping bodies into a single body in one pass.
+ * <p>
+ * Unlike {@link ProcessCollisionsTask}, which transfers mass between one pair of bodies at a time, every body that touched another
+ * at any time during the last step is joined into a cluster and the whole cluster becomes its most massive body. That body takes
+ * the total mass, the centre of mass and the velocity that conserves momentum, and the rest of the cluster is removed. The result
+ * does not depend on the order of the bodies, and a pile-up is resolved in a single iteration however many bodies are involved.
+ * <p>
+ * The clusters are found with a lock-free union-find over the pairs from the broad phase, and each cluster is then merged by a
+ * single thread, with the clusters in parallel. The clusters are merged when the task is created. Executing the task only removes
+ * the bodies that have been merged into another, each of which is recorded as a merge into the most massive body.
+ *
+ * @author Ed
+ */
+public class ProcessClusterMergeTask extends AbstractProcessMutableBodyTask
+{
+   /** The system property that merges whole clusters rather than resolving pairs of bodies, if it is <code>true</code>. */
+   public static final String MergeClustersProperty = "mergeClusters"; //$NON-NLS-1$
+
+   /**
+    * Initializes a new ProcessClusterMergeTask object that finds the bodies that overlap with a grid built from scratch.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param executor the executor over which the clusters are found and merged.
+    */
+   public ProcessClusterMergeTask( final List< Body > input, final Settings settings, final PartitionExecutor executor )
+   {
+      super( input, settings );
+
+      merge( input, ProcessCollisionsTask.buildGrid( input ), settings.getTimeStep(), executor );
+   }
+
+   /**
+    * Initializes a new ProcessClusterMergeTask object that finds the bodies that overlap with a {@link PersistentBroadPhase}
+    * kept from the last iteration. This updates it to the input bodies.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param executor the executor over which the clusters are found and merged.
+    * @param broadPhase the broad phase.
+    */
+   public ProcessClusterMergeTask( final List< Body > input,
+                                   final Settings settings,
+                                   final PartitionExecutor executor,
+                                   final PersistentBroadPhase broadPhase )
+   {
+      super( input, settings );
+
+      broadPhase.update( input );
+      merge( input, broadPhase, settings.getTimeStep(), executor );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final List< Body > in, final Body[] out )
+   {
+      for( final int i : extent )
+      {
+         final Body b = in.get( i );
+         out[ i ] = b.mass == 0 ? null : b;
+      }
+   }
+
+   private void merge( final List< Body > bodies,
+                       final BroadPhase broadPhase,
+                       final int timeStep,
+                       final PartitionExecutor executor )
+   {
+      final int count = bodies.size();
+      if( count == 0 )
+      {
+         return;
+      }
+
+      final Extent all = new Extent( 0, count - 1 );
+      final int[] cluster = ProcessParallelCollisionsTask.cluster( bodies, broadPhase, timeStep, all, executor );
+      final int[] start = new int[ count + 1 ];
+      final int[] members = ProcessParallelCollisionsTask.members( cluster, start );
+
+      executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int root : extent )
+            {
+               if( ( start[ root + 1 ] - start[ root ] ) > 1 )
+               {
+                  merge( bodies, members, start[ root ], start[ root + 1 ] );
+               }
+            }
+         }
+      } );
+   }
+
+   /**
+    * Merges a cluster into its most massive body, conserving mass and momentum.
+    *
+    * @param bodies the bodies.
+    * @param members the members of all of the clusters.
+    * @param first the position of the first member of the cluster.
+    * @param end the position after the last member of the cluster.
+    */
+   private void merge( final List< Body > bodies, final int[] members, final int first, final int end )
+   {
+      Body largest = null;
+      double mass = 0;
+      double x = 0;
+      double y = 0;
+      double momentumX = 0;
+      double momentumY = 0;
+      for( int p = first; p < end; p++ )
+      {
+         final Body body = bodies.get( members[ p ] );
+         mass += body.mass;
+         x += body.mass * body.position.x;
+         y += body.mass * body.position.y;
+         momentumX += body.mass * body.velocity.x;
+         momentumY += body.mass * body.velocity.y;
+         if( ( largest == null ) || ( body.mass > largest.mass ) )
+         {
+            largest = body;
+         }
+      }
+
+      for( int p = first; p < end; p++ )
+      {
+         final Body body = bodies.get( members[ p ] );
+         if( body != largest )
+         {
+            merged( members[ p ], largest.id, body.id );
+            body.mass = 0;
+         }
+      }
+
+      largest.mass = mass;
+      largest.radius = Math.sqrt( ( mass / largest.density ) / Math.PI );
+      largest.position.x = x / mass;
+      largest.position.y = y / mass;
+      largest.velocity.x = momentumX / mass;
+      largest.velocity.y = momentumY / mass;
+   }
+}
@@ -2,9 +2,11 @@ package uk.co.eduardo.gravity.app.mutable;
 
 import java.util.List;
 
+import uk.co.eduardo.gravity.app.MergeEvent;
 import uk.co.eduardo.gravity.math.mutable.Body;
 import uk.co.eduardo.gravity.task.Extent;
 import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
 
 /**
  * A task that can be partitioned that will process the input list of bodies and create an output list of bodies.
@@ -24,4 +26,25 @@ public interface ProcessMutableBodyTask extends ExtentTask
     * @return the output, processed bodies.
     */
    List< Body > getOutput();
+
+   /**
+    * Gets the output, removing the bodies that are not kept on multiple threads. This will only contain any content after the task
+    * has been run.
+    *
+    * @param executor the executor on which to gather the output.
+    * @return the output, processed bodies.
+    */
+   List< Body > getOutput( PartitionExecutor executor );
+
+   /**
+    * Gets the merges between bodies that happened during the task. This will only contain any content after the task has been
+    * run.
+    * <p>
+    * The merges are in the order of the bodies that were being processed when they happened, and in the order they happened for
+    * each of those bodies. This does not depend on how the task was partitioned, so a task that runs in parallel gives its merges
+    * in the same order as the serial task it stands in for.
+    *
+    * @return the merges.
+    */
+   List< MergeEvent > getMerges();
 }
@@ -0,0 +1,301 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.CollisionResolver;
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.BroadPhase;
+import uk.co.eduardo.gravity.spatial.IntList;
+import uk.co.eduardo.gravity.spatial.UnionFind;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentResultTask;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Task that processes collisions between bodies in parallel, with exactly the same result as {@link ProcessCollisionsTask}.
+ * <p>
+ * The bodies that overlap are first joined into clusters. Collisions within a cluster cannot affect any other cluster, so the
+ * clusters are resolved in parallel, each by a single thread in the same order as the serial task. The only way the result could
+ * differ is if a body grew as it merged until it reached a body in another cluster. Every body that grew is checked for that
+ * afterwards, and in the rare case that it happened the bodies are restored and resolved serially instead.
+ * <p>
+ * The collisions are resolved when the task is created. Executing the task only removes the bodies that have been swallowed.
+ *
+ * @author Ed
+ */
+public class ProcessParallelCollisionsTask extends AbstractProcessMutableBodyTask
+{
+   private boolean serial;
+
+   /**
+    * Initializes a new ProcessParallelCollisionsTask object that finds the bodies that might collide with a grid built from
+    * scratch.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param executor the executor over which the collisions are resolved.
+    */
+   public ProcessParallelCollisionsTask( final List< Body > input, final Settings settings, final PartitionExecutor executor )
+   {
+      super( input, settings );
+
+      resolve( input, ProcessCollisionsTask.buildGrid( input ), settings.getTimeStep(), executor );
+   }
+
+   /**
+    * Initializes a new ProcessParallelCollisionsTask object that finds the bodies that might collide with a {@link PersistentBroadPhase}
+    * kept from the last iteration. This updates it to the input bodies.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param executor the executor over which the collisions are resolved.
+    * @param broadPhase the broad phase.
+    */
+   public ProcessParallelCollisionsTask( final List< Body > input,
+                                         final Settings settings,
+                                         final PartitionExecutor executor,
+                                         final PersistentBroadPhase broadPhase )
+   {
+      super( input, settings );
+
+      broadPhase.update( input );
+      resolve( input, broadPhase, settings.getTimeStep(), executor );
+   }
+
+   /**
+    * Gets whether the collisions had to be resolved serially, because a body grew into a body in another cluster.
+    *
+    * @return <code>true</code> if the collisions were resolved serially.
+    */
+   public boolean isSerial()
+   {
+      return this.serial;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final List< Body > in, final Body[] out )
+   {
+      for( final int i : extent )
+      {
+         final Body b = in.get( i );
+         out[ i ] = b.mass == 0 ? null : b;
+      }
+   }
+
+   private void resolve( final List< Body > bodies,
+                         final BroadPhase broadPhase,
+                         final int timeStep,
+                         final PartitionExecutor executor )
+   {
+      final int count = bodies.size();
+      if( count == 0 )
+      {
+         return;
+      }
+
+      final double[] mass = new double[ count ];
+      final double[] radius = new double[ count ];
+      final double[] peak = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         mass[ i ] = bodies.get( i ).mass;
+         radius[ i ] = bodies.get( i ).radius;
+         peak[ i ] = radius[ i ];
+      }
+
+      final Extent all = new Extent( 0, count - 1 );
+      final int[] cluster = cluster( bodies, broadPhase, timeStep, all, executor );
+
+      final int[] start = new int[ count + 1 ];
+      final int[] members = members( cluster, start );
+
+      executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final MutableCollidingBodies colliding = new MutableCollidingBodies( ProcessParallelCollisionsTask.this, bodies );
+            final CollisionResolver resolver = new CollisionResolver( colliding,
+                                                                      broadPhase,
+                                                                      cluster,
+                                                                      peak,
+                                                                      timeStep );
+            for( final int root : extent )
+            {
+               if( ( start[ root + 1 ] - start[ root ] ) > 1 )
+               {
+                  for( int p = start[ root ]; p < start[ root + 1 ]; p++ )
+                  {
+                     resolver.resolve( members[ p ] );
+                  }
+               }
+            }
+         }
+      } );
+
+      this.serial = grewIntoAnotherCluster( bodies, broadPhase, cluster, radius, peak, timeStep, all, executor );
+      if( this.serial )
+      {
+         for( int i = 0; i < count; i++ )
+         {
+            bodies.get( i ).mass = mass[ i ];
+            bodies.get( i ).radius = radius[ i ];
+         }
+         clearMerges();
+         final CollisionResolver resolver = new CollisionResolver( new MutableCollidingBodies( this, bodies ), broadPhase, timeStep );
+         for( int i = 0; i < count; i++ )
+         {
+            resolver.resolve( i );
+         }
+      }
+   }
+
+   /**
+    * Joins every pair of bodies that touched at any time during the last step into clusters.
+    *
+    * @param bodies the bodies.
+    * @param broadPhase the broad phase.
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @param all the extent of all of the bodies.
+    * @param executor the executor over which the pairs are found.
+    * @return the cluster of each body, which is the index of its first member.
+    */
+   static int[] cluster( final List< Body > bodies,
+                         final BroadPhase broadPhase,
+                         final int timeStep,
+                         final Extent all,
+                         final PartitionExecutor executor )
+   {
+      final double maxTravel = MutableCollidingBodies.maxTravel( bodies, broadPhase, timeStep );
+      final UnionFind clusters = new UnionFind( all.getLength() );
+      executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final IntList candidates = new IntList();
+            for( final int i : extent )
+            {
+               final Body b1 = bodies.get( i );
+               if( b1.mass <= 0 )
+               {
+                  continue;
+               }
+               final double travel = MutableCollidingBodies.travel( b1, timeStep ) + maxTravel;
+               broadPhase.query( i, b1.radius + travel, candidates );
+               for( int k = 0; k < candidates.size(); k++ )
+               {
+                  final int j = candidates.get( k );
+                  final Body b2 = bodies.get( j );
+                  if( ( j > i )
+                      && ( b2.mass > 0 )
+                      && ( MutableCollidingBodies.closestApproach( b1, b2, timeStep ) < ( b1.radius + b2.radius ) ) )
+                  {
+                     clusters.union( i, j );
+                  }
+               }
+            }
+         }
+      } );
+
+      final int[] cluster = new int[ all.getLength() ];
+      executor.partitionTask( all, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int i : extent )
+            {
+               cluster[ i ] = clusters.find( i );
+            }
+         }
+      } );
+      return cluster;
+   }
+
+   /**
+    * Lists the members of each cluster in index order.
+    *
+    * @param cluster the cluster of each body, as returned by {@link #cluster(List, BroadPhase, int, Extent, PartitionExecutor)}.
+    * @param start set to the position of the first member of each cluster, indexed by its root, with one extra element at the
+    *           end. The members of the cluster whose root is r are at positions start[ r ] to start[ r + 1 ] - 1.
+    * @return the members of all of the clusters.
+    */
+   static int[] members( final int[] cluster, final int[] start )
+   {
+      final int count = cluster.length;
+      for( int i = 0; i < count; i++ )
+      {
+         start[ cluster[ i ] + 1 ]++;
+      }
+      for( int i = 0; i < count; i++ )
+      {
+         start[ i + 1 ] += start[ i ];
+      }
+      final int[] members = new int[ count ];
+      final int[] next = start.clone();
+      for( int i = 0; i < count; i++ )
+      {
+         members[ next[ cluster[ i ] ]++ ] = i;
+      }
+      return members;
+   }
+
+   /**
+    * Checks whether any body grew until it might have touched a body in another cluster at some point during the last step.
+    */
+   private static boolean grewIntoAnotherCluster( final List< Body > bodies,
+                                                  final BroadPhase broadPhase,
+                                                  final int[] cluster,
+                                                  final double[] radius,
+                                                  final double[] peak,
+                                                  final int timeStep,
+                                                  final Extent all,
+                                                  final PartitionExecutor executor )
+   {
+      double most = 0;
+      for( int i = 0; i < peak.length; i++ )
+      {
+         if( broadPhase.contains( i ) )
+         {
+            most = Math.max( most, peak[ i ] - broadPhase.getRadius( i ) );
+         }
+      }
+      final double growth = most;
+      final double maxTravel = MutableCollidingBodies.maxTravel( bodies, broadPhase, timeStep );
+
+      final List< Boolean > partial = executor.partitionResultTask( all, new ExtentResultTask< Boolean >()
+      {
+         @Override
+         public Boolean execute( final Extent extent )
+         {
+            final IntList candidates = new IntList();
+            for( final int i : extent )
+            {
+               if( peak[ i ] <= radius[ i ] )
+               {
+                  continue;
+               }
+               final Body b1 = bodies.get( i );
+               broadPhase.query( i, peak[ i ] + growth + MutableCollidingBodies.travel( b1, timeStep ) + maxTravel, candidates );
+               for( int k = 0; k < candidates.size(); k++ )
+               {
+                  final int j = candidates.get( k );
+                  if( ( cluster[ j ] != cluster[ i ] )
+                      && ( MutableCollidingBodies.closestApproach( b1, bodies.get( j ), timeStep ) < ( peak[ i ] + peak[ j ] ) ) )
+                  {
+                     return Boolean.TRUE;
+                  }
+               }
+            }
+            return Boolean.FALSE;
+         }
+      } );
+      return partial.contains( Boolean.TRUE );
+   }
+}
@@ -0,0 +1,58 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.SpaceFillingCurve;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Reorders the bodies along a {@link SpaceFillingCurve} so that bodies that are close together in space are also close together
+ * in the list. The bodies themselves are unchanged, only their order.
+ *
+ * @author Ed
+ */
+public class ProcessReorderTask extends AbstractProcessMutableBodyTask
+{
+   private final int[] order;
+
+   /**
+    * Initializes a new ProcessReorderTask object. This sorts the input bodies along the curve.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param curve the curve along which to order the bodies.
+    * @param executor the executor over which the sort is partitioned.
+    */
+   public ProcessReorderTask( final List< Body > input,
+                              final Settings settings,
+                              final SpaceFillingCurve curve,
+                              final PartitionExecutor executor )
+   {
+      super( input, settings );
+
+      final int count = getExtent().getLength();
+      final double[] x = new double[ count ];
+      final double[] y = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         x[ i ] = input.get( i ).position.x;
+         y[ i ] = input.get( i ).position.y;
+      }
+      this.order = curve.order( x, y, count, executor );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final List< Body > in, final Body[] out )
+   {
+      for( final int index : extent )
+      {
+         out[ index ] = in.get( this.order[ index ] );
+      }
+   }
+}
@@ -0,0 +1,68 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.math.mutable.Vector;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates and applies the net force on a body using a {@link ForceSolver} rather than by summing over every other body.
+ *
+ * @author Ed
+ */
+public class ProcessSolverForceTask extends AbstractProcessMutableBodyTask
+{
+   private final ForceSolver solver;
+
+   private final double[] ax;
+
+   private final double[] ay;
+
+   /**
+    * Initializes a new ProcessSolverForceTask object. This prepares the solver with the positions of the input bodies.
+    *
+    * @param input the list of bodies to process.
+    * @param settings the applicaiton settings.
+    * @param solver the solver used to calculate the acceleration of each body.
+    */
+   public ProcessSolverForceTask( final List< Body > input, final Settings settings, final ForceSolver solver )
+   {
+      super( input, settings );
+      this.solver = solver;
+
+      final int count = getExtent().getLength();
+      final double[] x = new double[ count ];
+      final double[] y = new double[ count ];
+      final double[] mass = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         final Body body = input.get( i );
+         x[ i ] = body.position.x;
+         y[ i ] = body.position.y;
+         mass[ i ] = body.mass;
+      }
+
+      this.ax = new double[ count ];
+      this.ay = new double[ count ];
+      solver.prepare( x, y, mass, count );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final List< Body > in, final Body[] out )
+   {
+      this.solver.accelerate( extent, this.ax, this.ay );
+
+      for( final int index : extent )
+      {
+         final Body body = in.get( index );
+         final Vector force = new Vector( this.ax[ index ] * body.mass, this.ay[ index ] * body.mass );
+         out[ index ] = body.applyForce( force, getSettings().getTimeStep() );
+      }
+   }
+}
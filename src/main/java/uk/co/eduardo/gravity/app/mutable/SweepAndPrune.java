@@ -0,0 +1,214 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.BodyIndex;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.IntList;
+
+/**
+ * Sweep and prune broad phase, which keeps the bodies sorted along the x axis so that the bodies that might overlap a body are
+ * found by sweeping outwards from it until the gap along x is too large.
+ * <p>
+ * The same object is updated every iteration. Bodies only move slightly between iterations, so the order from the last update is
+ * almost sorted already and an insertion sort restores it in close to linear time. Bodies much larger than the mean radius would
+ * make every sweep cover a wide range, so they are left out of the sweep and are always returned as candidates instead.
+ * <p>
+ * The bodies are matched up with those of the last update by their identifiers, through a {@link BodyIndex}, so a body is found
+ * however it has moved within the list.
+ *
+ * @author Ed
+ */
+public class SweepAndPrune implements PersistentBroadPhase
+{
+   private static final double LargeRadius = 4;
+
+   private final BodyIndex index = new BodyIndex();
+
+   private final IntList large = new IntList();
+
+   private long[] sorted = new long[ 0 ];
+
+   private int[] order = new int[ 0 ];
+
+   private int[] rank = new int[ 0 ];
+
+   private double[] x = new double[ 0 ];
+
+   private double[] y = new double[ 0 ];
+
+   private double[] radius = new double[ 0 ];
+
+   private boolean[] isLarge = new boolean[ 0 ];
+
+   private int count;
+
+   private double maxRadius;
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void update( final List< Body > bodies )
+   {
+      final int previousCount = this.count;
+      this.count = bodies.size();
+      if( this.order.length < this.count )
+      {
+         final int capacity = Math.max( this.count, 2 * this.order.length );
+         this.order = new int[ capacity ];
+         this.rank = new int[ capacity ];
+         this.x = new double[ capacity ];
+         this.y = new double[ capacity ];
+         this.radius = new double[ capacity ];
+         this.isLarge = new boolean[ capacity ];
+      }
+
+      for( int i = 0; i < this.count; i++ )
+      {
+         this.index.put( bodies.get( i ).id, i );
+      }
+
+      // Keep the order from the last update for the bodies that are still there, and add any new bodies at the end. Each body is
+      // removed from the index as it is placed, so the index is empty again for the next update.
+      int n = 0;
+      for( int p = 0; p < previousCount; p++ )
+      {
+         final int i = this.index.get( this.sorted[ p ] );
+         if( i >= 0 )
+         {
+            this.index.remove( this.sorted[ p ] );
+            this.order[ n++ ] = i;
+         }
+      }
+      for( int i = 0; ( i < this.count ) && ( n < this.count ); i++ )
+      {
+         final long id = bodies.get( i ).id;
+         if( this.index.get( id ) >= 0 )
+         {
+            this.index.remove( id );
+            this.order[ n++ ] = i;
+         }
+      }
+
+      for( int p = 0; p < this.count; p++ )
+      {
+         this.x[ p ] = bodies.get( this.order[ p ] ).position.x;
+      }
+      insertionSort();
+
+      if( this.sorted.length < this.count )
+      {
+         this.sorted = new long[ this.order.length ];
+      }
+      for( int p = 0; p < this.count; p++ )
+      {
+         final Body body = bodies.get( this.order[ p ] );
+         this.sorted[ p ] = body.id;
+         this.rank[ this.order[ p ] ] = p;
+         this.y[ p ] = body.position.y;
+      }
+
+      double sum = 0;
+      for( int i = 0; i < this.count; i++ )
+      {
+         sum += bodies.get( i ).radius;
+      }
+      final double largeRadius = this.count > 0 ? ( LargeRadius * sum ) / this.count : 0;
+      this.large.clear();
+      this.maxRadius = 0;
+      for( int i = 0; i < this.count; i++ )
+      {
+         this.radius[ i ] = bodies.get( i ).radius;
+         this.isLarge[ i ] = this.radius[ i ] > largeRadius;
+         if( this.isLarge[ i ] )
+         {
+            this.large.add( i );
+         }
+         else
+         {
+            this.maxRadius = Math.max( this.maxRadius, this.radius[ i ] );
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.radius[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains( final int body )
+   {
+      return !this.isLarge[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void query( final int body, final double reach, final IntList candidates )
+   {
+      candidates.clear();
+
+      final double range = reach + this.maxRadius;
+      final int p = this.rank[ body ];
+      final double bx = this.x[ p ];
+      final double by = this.y[ p ];
+      for( int q = p - 1; ( q >= 0 ) && ( ( bx - this.x[ q ] ) <= range ); q-- )
+      {
+         addIfNear( q, by, range, candidates );
+      }
+      for( int q = p + 1; ( q < this.count ) && ( ( this.x[ q ] - bx ) <= range ); q++ )
+      {
+         addIfNear( q, by, range, candidates );
+      }
+
+      for( int i = 0; i < this.large.size(); i++ )
+      {
+         if( this.large.get( i ) != body )
+         {
+            candidates.add( this.large.get( i ) );
+         }
+      }
+      candidates.sort();
+   }
+
+   private void addIfNear( final int position, final double by, final double range, final IntList candidates )
+   {
+      final int other = this.order[ position ];
+      if( !this.isLarge[ other ] && ( Math.abs( this.y[ position ] - by ) <= range ) )
+      {
+         candidates.add( other );
+      }
+   }
+
+   /**
+    * Sorts the bodies by x, moving each body back past the bodies in front of it that are further along. This takes close to
+    * linear time when the bodies are almost sorted.
+    */
+   private void insertionSort()
+   {
+      for( int p = 1; p < this.count; p++ )
+      {
+         final double key = this.x[ p ];
+         final int body = this.order[ p ];
+         int q = p - 1;
+         while( ( q >= 0 ) && ( this.x[ q ] > key ) )
+         {
+            this.x[ q + 1 ] = this.x[ q ];
+            this.order[ q + 1 ] = this.order[ q ];
+            q--;
+         }
+         this.x[ q + 1 ] = key;
+         this.order[ q + 1 ] = body;
+      }
+   }
+}
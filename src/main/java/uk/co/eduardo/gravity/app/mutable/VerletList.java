@@ -0,0 +1,324 @@
+package uk.co.eduardo.gravity.app.mutable;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.BodyIndex;
+import uk.co.eduardo.gravity.math.mutable.Body;
+import uk.co.eduardo.gravity.spatial.CollisionGrid;
+import uk.co.eduardo.gravity.spatial.IntList;
+
+/**
+ * Verlet list broad phase, which lists the neighbours of every body out to a little further than is needed, and reuses the lists
+ * for as many iterations as they are still guaranteed to hold every candidate.
+ * <p>
+ * The extra distance is the skin. It allows for a number of iterations of the fastest body moving towards another, and for some
+ * growth in the radii. Two bodies can only have closed by the sum of how far each has moved since the lists were built, so a
+ * query can be answered from the lists as long as its range plus those displacements is within the distance the lists reach.
+ * The lists are rebuilt when the bodies have moved too far for that to hold in general, or when a body appears that was not
+ * there when they were built. The bodies are matched up with those the lists were built from by their identifiers, through a
+ * {@link BodyIndex}. A query that still cannot be answered from the lists, because a body has grown unusually quickly, falls back
+ * to checking every body.
+ * <p>
+ * Bodies much larger than the mean radius are always returned as candidates instead, as they are for a {@link CollisionGrid}.
+ *
+ * @author Ed
+ */
+public class VerletList implements PersistentBroadPhase
+{
+   /** The default number of iterations of the fastest body moving that the skin allows for. */
+   public static final int DefaultSkinIterations = 10;
+
+   private static final double LargeRadius = 4;
+
+   /** The growth in the radii that the skin allows for, as a fraction of the largest radius. */
+   private static final double RadiusSlack = 0.5;
+
+   private final int timeStep;
+
+   private final int skinIterations;
+
+   private final BodyIndex built = new BodyIndex();
+
+   private final IntList neighbours = new IntList();
+
+   private final IntList large = new IntList();
+
+   private int[] start = new int[ 1 ];
+
+   private long[] builtId = new long[ 0 ];
+
+   private double[] builtX = new double[ 0 ];
+
+   private double[] builtY = new double[ 0 ];
+
+   private double[] reach = new double[ 0 ];
+
+   private int[] current = new int[ 0 ];
+
+   private int[] builtIndex = new int[ 0 ];
+
+   private double[] displacement = new double[ 0 ];
+
+   private double[] radius = new double[ 0 ];
+
+   private boolean[] isLarge = new boolean[ 0 ];
+
+   private List< Body > bodies;
+
+   private double skin;
+
+   private double builtMaxRadius;
+
+   private double maxRadius;
+
+   private double maxDisplacement;
+
+   private int builds;
+
+   /**
+    * Initializes a new VerletList object with a skin that allows for {@link #DefaultSkinIterations} iterations.
+    *
+    * @param timeStep the number of seconds simulated by each iteration.
+    */
+   public VerletList( final int timeStep )
+   {
+      this( timeStep, DefaultSkinIterations );
+   }
+
+   /**
+    * Initializes a new VerletList object.
+    *
+    * @param timeStep the number of seconds simulated by each iteration.
+    * @param skinIterations the number of iterations of the fastest body moving that the skin allows for.
+    */
+   public VerletList( final int timeStep, final int skinIterations )
+   {
+      if( skinIterations < 1 )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.timeStep = timeStep;
+      this.skinIterations = skinIterations;
+   }
+
+   /**
+    * Gets the number of times the lists have been built.
+    *
+    * @return the number of builds.
+    */
+   public int getBuildCount()
+   {
+      return this.builds;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void update( final List< Body > input )
+   {
+      this.bodies = input;
+      final int count = input.size();
+      if( this.isLarge.length < count )
+      {
+         final int capacity = Math.max( count, 2 * this.isLarge.length );
+         this.isLarge = new boolean[ capacity ];
+         this.radius = new double[ capacity ];
+         this.builtIndex = new int[ capacity ];
+         this.displacement = new double[ capacity ];
+      }
+
+      double sum = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         sum += input.get( i ).radius;
+      }
+      final double largeRadius = count > 0 ? ( LargeRadius * sum ) / count : 0;
+      this.large.clear();
+      this.maxRadius = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         this.radius[ i ] = input.get( i ).radius;
+         this.isLarge[ i ] = this.radius[ i ] > largeRadius;
+         if( this.isLarge[ i ] )
+         {
+            this.large.add( i );
+         }
+         else
+         {
+            this.maxRadius = Math.max( this.maxRadius, this.radius[ i ] );
+         }
+      }
+
+      // Two bodies can have closed by twice the largest displacement, and the radii may have grown into the skin too.
+      if( !match() || ( ( ( 2 * this.maxDisplacement ) + ( this.maxRadius - this.builtMaxRadius ) ) > this.skin ) )
+      {
+         build();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.radius[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains( final int body )
+   {
+      return !this.isLarge[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void query( final int body, final double reach, final IntList candidates )
+   {
+      candidates.clear();
+
+      final double range = reach + this.maxRadius;
+      final int b = this.builtIndex[ body ];
+      if( ( range + this.displacement[ body ] + this.maxDisplacement ) <= this.reach[ b ] )
+      {
+         for( int p = this.start[ b ]; p < this.start[ b + 1 ]; p++ )
+         {
+            final int other = this.current[ this.neighbours.get( p ) ];
+            if( ( other >= 0 ) && !this.isLarge[ other ] )
+            {
+               candidates.add( other );
+            }
+         }
+      }
+      else
+      {
+         final Body b1 = this.bodies.get( body );
+         for( int other = 0; other < this.bodies.size(); other++ )
+         {
+            final Body b2 = this.bodies.get( other );
+            if( ( other != body )
+                && !this.isLarge[ other ]
+                && ( Math.abs( b2.position.x - b1.position.x ) <= range )
+                && ( Math.abs( b2.position.y - b1.position.y ) <= range ) )
+            {
+               candidates.add( other );
+            }
+         }
+      }
+
+      for( int i = 0; i < this.large.size(); i++ )
+      {
+         if( this.large.get( i ) != body )
+         {
+            candidates.add( this.large.get( i ) );
+         }
+      }
+      candidates.sort();
+   }
+
+   /**
+    * Matches the bodies up with the bodies the lists were built from, and finds how far each has moved since.
+    *
+    * @return <code>false</code> if a body was not there when the lists were built.
+    */
+   private boolean match()
+   {
+      if( this.current.length == 0 )
+      {
+         return false;
+      }
+
+      for( int b = 0; b < this.current.length; b++ )
+      {
+         this.current[ b ] = -1;
+      }
+      this.maxDisplacement = 0;
+      for( int i = 0; i < this.bodies.size(); i++ )
+      {
+         final Body body = this.bodies.get( i );
+         final int b = this.built.get( body.id );
+         if( b < 0 )
+         {
+            return false;
+         }
+         this.builtIndex[ i ] = b;
+         this.current[ b ] = i;
+
+         final double dx = body.position.x - this.builtX[ b ];
+         final double dy = body.position.y - this.builtY[ b ];
+         this.displacement[ i ] = Math.sqrt( ( dx * dx ) + ( dy * dy ) );
+         this.maxDisplacement = Math.max( this.maxDisplacement, this.displacement[ i ] );
+      }
+      return true;
+   }
+
+   private void build()
+   {
+      final int count = this.bodies.size();
+      this.builds++;
+      for( final long id : this.builtId )
+      {
+         this.built.remove( id );
+      }
+      this.builtId = new long[ count ];
+      this.builtX = new double[ count ];
+      this.builtY = new double[ count ];
+      this.reach = new double[ count ];
+      this.current = new int[ count ];
+      this.start = new int[ count + 1 ];
+      this.neighbours.clear();
+      this.maxDisplacement = 0;
+      this.builtMaxRadius = this.maxRadius;
+
+      double maxTravel = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         final Body body = this.bodies.get( i );
+         this.built.put( body.id, i );
+         this.builtId[ i ] = body.id;
+         this.builtX[ i ] = body.position.x;
+         this.builtY[ i ] = body.position.y;
+         this.current[ i ] = i;
+         this.builtIndex[ i ] = i;
+         this.displacement[ i ] = 0;
+         if( !this.isLarge[ i ] )
+         {
+            maxTravel = Math.max( maxTravel, MutableCollidingBodies.travel( body, this.timeStep ) );
+         }
+      }
+
+      // Each iteration two bodies can close by twice the distance the fastest body moves.
+      this.skin = ( 2 * this.skinIterations * maxTravel ) + ( RadiusSlack * this.maxRadius );
+
+      final CollisionGrid grid = new CollisionGrid();
+      grid.build( this.builtX, this.builtY, this.radius, count );
+      final IntList candidates = new IntList();
+      for( int i = 0; i < count; i++ )
+      {
+         // The same reach as the collision tasks ask for, plus the skin. The grid allows for the radius of the other body.
+         final double travel = MutableCollidingBodies.travel( this.bodies.get( i ), this.timeStep ) + maxTravel;
+         final double reach = this.radius[ i ] + travel + this.skin;
+         this.reach[ i ] = reach + this.maxRadius;
+
+         this.start[ i ] = this.neighbours.size();
+         grid.query( i, reach, candidates );
+         for( int k = 0; k < candidates.size(); k++ )
+         {
+            final int j = candidates.get( k );
+            final double dx = this.builtX[ j ] - this.builtX[ i ];
+            final double dy = this.builtY[ j ] - this.builtY[ i ];
+            if( ( ( dx * dx ) + ( dy * dy ) ) <= ( this.reach[ i ] * this.reach[ i ] ) )
+            {
+               this.neighbours.add( j );
+            }
+         }
+      }
+      this.start[ count ] = this.neighbours.size();
+   }
+}
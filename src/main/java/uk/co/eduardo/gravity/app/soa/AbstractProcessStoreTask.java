@@ -0,0 +1,94 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.MergeEvent;
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * A task that can be partitioned that will process the bodies in a {@link BodyStore} in place. Bodies are removed by marking
+ * them in the store, which is compacted once the task has finished.
+ *
+ * @author Ed
+ */
+public abstract class AbstractProcessStoreTask implements ProcessStoreTask
+{
+   private final BodyStore store;
+
+   private final Settings settings;
+
+   private final Extent extent;
+
+   private final List< MergeEvent > merges = new ArrayList<>();
+
+   /**
+    * Initializes a new AbstractProcessStoreTask object.
+    *
+    * @param store the bodies to process.
+    * @param settings the applicaiton settings.
+    */
+   public AbstractProcessStoreTask( final BodyStore store, final Settings settings )
+   {
+      this.store = store;
+      this.settings = settings;
+      this.extent = new Extent( 0, store.size() - 1 );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final List< MergeEvent > getMerges()
+   {
+      return Collections.unmodifiableList( this.merges );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final Extent getExtent()
+   {
+      return this.extent;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public final void execute( final Extent extent )
+   {
+      execute( extent, this.store );
+   }
+
+   /**
+    * @param extent the extent of indices over which the task should execute
+    * @param store the bodies.
+    */
+   protected abstract void execute( Extent extent, BodyStore store );
+
+   /**
+    * Records that one body absorbed all of the mass of another. This may be called from any thread.
+    *
+    * @param absorber the identifier of the body that absorbed the other.
+    * @param absorbed the identifier of the body that was absorbed.
+    */
+   protected final void merged( final long absorber, final long absorbed )
+   {
+      synchronized( this.merges )
+      {
+         this.merges.add( new MergeEvent( this, absorber, absorbed ) );
+      }
+   }
+
+   /**
+    * @return the application configuration settings.
+    */
+   protected final Settings getSettings()
+   {
+      return this.settings;
+   }
+}
@@ -0,0 +1,157 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Stores the state of every body as columns of primitive values, one column per property, rather than as an object per body.
+ * <p>
+ * Bodies are referred to by their index, or slot. A body that is removed stays in its slot, marked as no longer live, until the
+ * store is compacted. Compacting moves the live bodies down to fill the gaps, so the indices of the bodies after a removed body
+ * change, but their order is kept.
+ * <p>
+ * Each body also has an identifier, which it keeps wherever it moves. The slot of a body can be found from its identifier in
+ * constant time with {@link #getSlot(long)}, and compacting updates only the identifiers of the bodies that it moves or drops.
+ * <p>
+ * Different bodies may be read and written by different threads at the same time. Adding bodies and compacting the store are not
+ * thread-safe.
+ *
+ * @author Ed
+ */
+public interface BodyStore
+{
+   /**
+    * Gets the number of bodies, including any that have been removed since the store was last compacted.
+    *
+    * @return the number of bodies.
+    */
+   int size();
+
+   /**
+    * Adds a body after the last body. Its radius is calculated from its mass and density.
+    *
+    * @param id the identifier of the body.
+    * @param mass the mass of the body in kilograms.
+    * @param density the density of the body in kilograms/metre<sup>2</sup>.
+    * @param x the x coordinate of the body in metres.
+    * @param y the y coordinate of the body in metres.
+    * @param velocityX the x component of the velocity of the body in metres/second.
+    * @param velocityY the y component of the velocity of the body in metres/second.
+    * @return the index of the body.
+    */
+   int add( long id, double mass, double density, double x, double y, double velocityX, double velocityY );
+
+   /**
+    * @param body the index of the body.
+    * @return the identifier of the body.
+    */
+   long getId( int body );
+
+   /**
+    * Gets the index of a body from its identifier. A body that has been removed keeps its index until the store is compacted.
+    *
+    * @param id the identifier of the body.
+    * @return the index of the body, or -1 if there is no body with the identifier.
+    */
+   int getSlot( long id );
+
+   /**
+    * @param body the index of the body.
+    * @return the mass of the body in kilograms.
+    */
+   double getMass( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param mass the mass of the body in kilograms.
+    */
+   void setMass( int body, double mass );
+
+   /**
+    * @param body the index of the body.
+    * @return the density of the body in kilograms/metre<sup>2</sup>.
+    */
+   double getDensity( int body );
+
+   /**
+    * @param body the index of the body.
+    * @return the radius of the body in metres.
+    */
+   double getRadius( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param radius the radius of the body in metres.
+    */
+   void setRadius( int body, double radius );
+
+   /**
+    * @param body the index of the body.
+    * @return the x coordinate of the body in metres.
+    */
+   double getX( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param x the x coordinate of the body in metres.
+    */
+   void setX( int body, double x );
+
+   /**
+    * @param body the index of the body.
+    * @return the y coordinate of the body in metres.
+    */
+   double getY( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param y the y coordinate of the body in metres.
+    */
+   void setY( int body, double y );
+
+   /**
+    * @param body the index of the body.
+    * @return the x component of the velocity of the body in metres/second.
+    */
+   double getVelocityX( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param velocityX the x component of the velocity of the body in metres/second.
+    */
+   void setVelocityX( int body, double velocityX );
+
+   /**
+    * @param body the index of the body.
+    * @return the y component of the velocity of the body in metres/second.
+    */
+   double getVelocityY( int body );
+
+   /**
+    * @param body the index of the body.
+    * @param velocityY the y component of the velocity of the body in metres/second.
+    */
+   void setVelocityY( int body, double velocityY );
+
+   /**
+    * Gets whether a body is live, which it is until it is removed.
+    *
+    * @param body the index of the body.
+    * @return <code>true</code> if the body has not been removed.
+    */
+   boolean isLive( int body );
+
+   /**
+    * Removes a body. It keeps its slot until the store is compacted.
+    *
+    * @param body the index of the body.
+    */
+   void remove( int body );
+
+   /**
+    * Moves the live bodies down to fill the slots of the bodies that have been removed, keeping their order. The bodies are
+    * compacted on the threads of an executor, and nothing is moved if no body has been removed since the last compaction.
+    *
+    * @param executor the executor on which to compact the store.
+    */
+   void compact( PartitionExecutor executor );
+}
@@ -0,0 +1,52 @@
+package uk.co.eduardo.gravity.app.soa;
+
+/**
+ * Factory for the available {@link BodyStore} implementations.
+ *
+ * @author Ed
+ */
+public final class BodyStores
+{
+   /** The system property used to select a body store. */
+   public static final String StoreProperty = "bodyStore"; //$NON-NLS-1$
+
+   private BodyStores()
+   {
+      // Static methods only
+   }
+
+   /**
+    * Creates the body store named by the {@value #StoreProperty} system property.
+    *
+    * @param capacity the number of bodies the store should have room for before it has to grow.
+    * @return the store.
+    */
+   public static BodyStore fromSystemProperty( final int capacity )
+   {
+      return create( System.getProperty( StoreProperty ), capacity );
+   }
+
+   /**
+    * Creates a body store by name.
+    *
+    * @param name the name of the store, or <code>null</code> for the default of "array".
+    * @param capacity the number of bodies the store should have room for before it has to grow.
+    * @return the store.
+    */
+   public static BodyStore create( final String name, final int capacity )
+   {
+      if( ( name == null ) || "array".equals( name ) ) //$NON-NLS-1$
+      {
+         return new ArrayBodyStore( capacity );
+      }
+
+      switch( name )
+      {
+         case "buffer": //$NON-NLS-1$
+            return new BufferBodyStore( capacity );
+
+         default:
+            throw new IllegalArgumentException( "Unknown body store: " + name ); //$NON-NLS-1$
+      }
+   }
+}
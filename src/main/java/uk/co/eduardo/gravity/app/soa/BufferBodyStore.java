@@ -0,0 +1,538 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import uk.co.eduardo.gravity.task.IndexCompaction;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * A {@link BodyStore} that keeps each column off the heap in a direct {@link ByteBuffer}, so that the heap and the time spent in
+ * garbage collection do not grow with the number of bodies.
+ * <p>
+ * Each column has a buffer of its own in the native byte order, which allows up to 2<sup>28</sup> bodies. The buffers are only
+ * accessed by absolute index, which does not change their state, so different bodies may be read and written by different
+ * threads at the same time. The buffers grow by doubling as bodies are added, and the old buffers are freed by the garbage
+ * collector.
+ * <p>
+ * The slot of each body is found from its identifier with a table in another direct buffer, indexed by identifier like a
+ * {@link uk.co.eduardo.gravity.app.BodyIndex BodyIndex}, so that the table is off the heap as well. It holds -1 for identifiers
+ * with no body, and allows identifiers up to 2<sup>29</sup>.
+ * <p>
+ * The store is compacted on multiple threads with an {@link IndexCompaction}, which copies the live bodies into a second set of
+ * buffers that then takes the place of the first. The second set is kept for the next compaction, so a store that has been
+ * compacted takes twice the memory.
+ * <p>
+ * The columns can be written to a channel as a checkpoint straight from the buffers, without copying them onto the heap, and read
+ * back with {@link #read(ReadableByteChannel)}, along with the identifiers of the bodies. A checkpoint can only be read on a
+ * machine with the same byte order.
+ *
+ * @author Ed
+ */
+public class BufferBodyStore implements BodyStore
+{
+   private static final int DefaultCapacity = 16;
+
+   private static final int Mass = 0;
+
+   private static final int Density = 1;
+
+   private static final int Radius = 2;
+
+   private static final int X = 3;
+
+   private static final int Y = 4;
+
+   private static final int VelocityX = 5;
+
+   private static final int VelocityY = 6;
+
+   private static final int Columns = 7;
+
+   private static final int HeaderBytes = 8;
+
+   private static final int MaxIdentifiers = Integer.MAX_VALUE / Integer.BYTES;
+
+   private ByteBuffer slots = ByteBuffer.allocateDirect( 0 ).order( ByteOrder.nativeOrder() );
+
+   private ByteBuffer[] columns = new ByteBuffer[ Columns ];
+
+   private ByteBuffer ids;
+
+   private ByteBuffer live;
+
+   private ByteBuffer[] spareColumns;
+
+   private ByteBuffer spareIds;
+
+   private ByteBuffer spareLive;
+
+   private int capacity;
+
+   private int size;
+
+   private boolean removed;
+
+   /**
+    * Initializes a new, empty BufferBodyStore object.
+    */
+   public BufferBodyStore()
+   {
+      this( DefaultCapacity );
+   }
+
+   /**
+    * Initializes a new, empty BufferBodyStore object with room for a number of bodies before it has to grow.
+    *
+    * @param capacity the number of bodies.
+    */
+   public BufferBodyStore( final int capacity )
+   {
+      if( ( capacity < 0 ) || ( capacity > ( Integer.MAX_VALUE / Double.BYTES ) ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      allocate( capacity );
+   }
+
+   /**
+    * Reads a checkpoint written by {@link #write(WritableByteChannel)}.
+    *
+    * @param channel the channel from which to read.
+    * @return a store holding the bodies in the checkpoint.
+    * @throws IOException if the checkpoint cannot be read, or was written with a different byte order.
+    */
+   public static BufferBodyStore read( final ReadableByteChannel channel ) throws IOException
+   {
+      final ByteBuffer header = ByteBuffer.allocate( HeaderBytes );
+      readFully( channel, header );
+      ( (Buffer) header ).flip();
+      final int size = header.getInt();
+      final boolean bigEndian = header.getInt() != 0;
+      if( ( size < 0 ) || ( bigEndian != ( ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ) ) )
+      {
+         throw new IOException( "Not a checkpoint for this machine" ); //$NON-NLS-1$
+      }
+
+      final BufferBodyStore store = new BufferBodyStore( size );
+      for( final ByteBuffer column : store.columns )
+      {
+         readFully( channel, slice( column, size * Double.BYTES ) );
+      }
+      readFully( channel, slice( store.ids, size * Long.BYTES ) );
+      readFully( channel, slice( store.live, size ) );
+      store.size = size;
+      for( int body = 0; body < size; body++ )
+      {
+         store.putSlot( store.getId( body ), body );
+         if( !store.isLive( body ) )
+         {
+            store.removed = true;
+         }
+      }
+      return store;
+   }
+
+   /**
+    * Writes the bodies to a channel as a checkpoint, including any that have been removed. The columns are written straight from
+    * the buffers.
+    *
+    * @param channel the channel to which to write.
+    * @throws IOException if the checkpoint cannot be written.
+    */
+   public void write( final WritableByteChannel channel ) throws IOException
+   {
+      final ByteBuffer header = ByteBuffer.allocate( HeaderBytes );
+      header.putInt( this.size );
+      header.putInt( ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0 );
+      ( (Buffer) header ).flip();
+      writeFully( channel, header );
+
+      for( final ByteBuffer column : this.columns )
+      {
+         writeFully( channel, slice( column, this.size * Double.BYTES ) );
+      }
+      writeFully( channel, slice( this.ids, this.size * Long.BYTES ) );
+      writeFully( channel, slice( this.live, this.size ) );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return this.size;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int add( final long id,
+                   final double mass,
+                   final double density,
+                   final double x,
+                   final double y,
+                   final double velocityX,
+                   final double velocityY )
+   {
+      if( this.size == this.capacity )
+      {
+         if( this.capacity == ( Integer.MAX_VALUE / Double.BYTES ) )
+         {
+            throw new IllegalStateException();
+         }
+         grow( (int) Math.min( Integer.MAX_VALUE / Double.BYTES, Math.max( DefaultCapacity, 2L * this.capacity ) ) );
+      }
+
+      final int body = this.size++;
+      this.ids.putLong( body * Long.BYTES, id );
+      set( Mass, body, mass );
+      set( Density, body, density );
+      set( Radius, body, Math.sqrt( ( mass / density ) / Math.PI ) );
+      set( X, body, x );
+      set( Y, body, y );
+      set( VelocityX, body, velocityX );
+      set( VelocityY, body, velocityY );
+      this.live.put( body, (byte) 1 );
+      putSlot( id, body );
+      return body;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getId( final int body )
+   {
+      return this.ids.getLong( body * Long.BYTES );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getSlot( final long id )
+   {
+      if( ( id < 0 ) || ( id >= ( this.slots.capacity() / Integer.BYTES ) ) )
+      {
+         return -1;
+      }
+      return this.slots.getInt( (int) id * Integer.BYTES );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getMass( final int body )
+   {
+      return get( Mass, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setMass( final int body, final double mass )
+   {
+      set( Mass, body, mass );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getDensity( final int body )
+   {
+      return get( Density, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return get( Radius, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setRadius( final int body, final double radius )
+   {
+      set( Radius, body, radius );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getX( final int body )
+   {
+      return get( X, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setX( final int body, final double x )
+   {
+      set( X, body, x );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getY( final int body )
+   {
+      return get( Y, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setY( final int body, final double y )
+   {
+      set( Y, body, y );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityX( final int body )
+   {
+      return get( VelocityX, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setVelocityX( final int body, final double velocityX )
+   {
+      set( VelocityX, body, velocityX );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityY( final int body )
+   {
+      return get( VelocityY, body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setVelocityY( final int body, final double velocityY )
+   {
+      set( VelocityY, body, velocityY );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isLive( final int body )
+   {
+      return this.live.get( body ) != 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void remove( final int body )
+   {
+      // Any number of threads may set the flag at once, as they all set it to the same value.
+      this.live.put( body, (byte) 0 );
+      this.removed = true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void compact( final PartitionExecutor executor )
+   {
+      if( !this.removed )
+      {
+         return;
+      }
+      if( this.spareIds == null )
+      {
+         this.spareColumns = new ByteBuffer[ Columns ];
+         for( int c = 0; c < Columns; c++ )
+         {
+            this.spareColumns[ c ] = ByteBuffer.allocateDirect( this.capacity * Double.BYTES ).order( ByteOrder.nativeOrder() );
+         }
+         this.spareIds = ByteBuffer.allocateDirect( this.capacity * Long.BYTES ).order( ByteOrder.nativeOrder() );
+         this.spareLive = ByteBuffer.allocateDirect( this.capacity );
+      }
+
+      final int count = new IndexCompaction( executor )
+      {
+         @Override
+         protected boolean keep( final int index )
+         {
+            return isLive( index );
+         }
+
+         @Override
+         protected void move( final int from, final int to )
+         {
+            moveToSpare( from, to );
+         }
+
+         @Override
+         protected void drop( final int from )
+         {
+            removeSlot( getId( from ) );
+         }
+      }.compact( this.size );
+
+      final ByteBuffer[] oldColumns = this.columns;
+      this.columns = this.spareColumns;
+      this.spareColumns = oldColumns;
+      final ByteBuffer oldIds = this.ids;
+      this.ids = this.spareIds;
+      this.spareIds = oldIds;
+      final ByteBuffer oldLive = this.live;
+      this.live = this.spareLive;
+      this.spareLive = oldLive;
+      this.size = count;
+      this.removed = false;
+   }
+
+   /**
+    * Copies a live body into the spare buffers. No identifiers are created, so the slot table never grows and each thread can
+    * update the bodies that it moves.
+    */
+   private void moveToSpare( final int from, final int to )
+   {
+      for( int c = 0; c < Columns; c++ )
+      {
+         this.spareColumns[ c ].putDouble( to * Double.BYTES, this.columns[ c ].getDouble( from * Double.BYTES ) );
+      }
+      final long id = getId( from );
+      this.spareIds.putLong( to * Long.BYTES, id );
+      this.spareLive.put( to, (byte) 1 );
+      if( to != from )
+      {
+         putSlot( id, to );
+      }
+   }
+
+   private double get( final int column, final int body )
+   {
+      return this.columns[ column ].getDouble( body * Double.BYTES );
+   }
+
+   private void set( final int column, final int body, final double value )
+   {
+      this.columns[ column ].putDouble( body * Double.BYTES, value );
+   }
+
+   private void putSlot( final long id, final int slot )
+   {
+      if( ( id < 0 ) || ( id >= MaxIdentifiers ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      final int length = this.slots.capacity() / Integer.BYTES;
+      if( id >= length )
+      {
+         final int grown = (int) Math.min( MaxIdentifiers, Math.max( id + 1, Math.max( DefaultCapacity, 2L * length ) ) );
+         final ByteBuffer old = this.slots;
+         this.slots = ByteBuffer.allocateDirect( grown * Integer.BYTES ).order( ByteOrder.nativeOrder() );
+         this.slots.put( slice( old, length * Integer.BYTES ) );
+         for( int i = length; i < grown; i++ )
+         {
+            this.slots.putInt( i * Integer.BYTES, -1 );
+         }
+      }
+      this.slots.putInt( (int) id * Integer.BYTES, slot );
+   }
+
+   private void removeSlot( final long id )
+   {
+      if( ( id >= 0 ) && ( id < ( this.slots.capacity() / Integer.BYTES ) ) )
+      {
+         this.slots.putInt( (int) id * Integer.BYTES, -1 );
+      }
+   }
+
+   private void allocate( final int bodies )
+   {
+      for( int c = 0; c < Columns; c++ )
+      {
+         this.columns[ c ] = ByteBuffer.allocateDirect( bodies * Double.BYTES ).order( ByteOrder.nativeOrder() );
+      }
+      this.ids = ByteBuffer.allocateDirect( bodies * Long.BYTES ).order( ByteOrder.nativeOrder() );
+      this.live = ByteBuffer.allocateDirect( bodies );
+      this.capacity = bodies;
+   }
+
+   private void grow( final int bodies )
+   {
+      final ByteBuffer[] old = this.columns;
+      final ByteBuffer oldIds = this.ids;
+      final ByteBuffer oldLive = this.live;
+      this.columns = new ByteBuffer[ Columns ];
+      allocate( bodies );
+      for( int c = 0; c < Columns; c++ )
+      {
+         this.columns[ c ].put( slice( old[ c ], this.size * Double.BYTES ) );
+      }
+      this.ids.put( slice( oldIds, this.size * Long.BYTES ) );
+      this.live.put( slice( oldLive, this.size ) );
+
+      // The spare buffers are allocated again at the next compaction, with the new capacity.
+      this.spareIds = null;
+   }
+
+   /**
+    * Gets a view of the first bytes of a buffer, with its own position and limit.
+    */
+   private static ByteBuffer slice( final ByteBuffer buffer, final int bytes )
+   {
+      // The calls go through Buffer so that they link on Java 8, where ByteBuffer does not override them.
+      final ByteBuffer view = buffer.duplicate();
+      ( (Buffer) view ).clear();
+      ( (Buffer) view ).limit( bytes );
+      return view;
+   }
+
+   private static void readFully( final ReadableByteChannel channel, final ByteBuffer buffer ) throws IOException
+   {
+      while( buffer.hasRemaining() )
+      {
+         if( channel.read( buffer ) < 0 )
+         {
+            throw new IOException( "Unexpected end of checkpoint" ); //$NON-NLS-1$
+         }
+      }
+   }
+
+   private static void writeFully( final WritableByteChannel channel, final ByteBuffer buffer ) throws IOException
+   {
+      while( buffer.hasRemaining() )
+      {
+         channel.write( buffer );
+      }
+   }
+}
@@ -0,0 +1,63 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.app.CollisionResolver;
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.spatial.HierarchicalGrid;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Task that processes collisions between bodies, merging the mass of the smaller body into the larger one.
+ * <p>
+ * The bodies that might overlap each body are found with a {@link HierarchicalGrid} built over the columns of the store, and the
+ * bodies are resolved one at a time in index order. The collisions are resolved when the task is created. Executing the task only
+ * removes the bodies that have been swallowed, each of which is recorded as a merge into the body that swallowed it.
+ *
+ * @author Ed
+ */
+public class ProcessCollisionsTask extends AbstractProcessStoreTask
+{
+   /**
+    * Initializes a new ProcessCollisionsTask object.
+    *
+    * @param store the bodies to process.
+    * @param settings the applicaiton settings.
+    */
+   public ProcessCollisionsTask( final BodyStore store, final Settings settings )
+   {
+      super( store, settings );
+
+      final int count = store.size();
+      final double[] x = new double[ count ];
+      final double[] y = new double[ count ];
+      final double[] radius = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         x[ i ] = store.getX( i );
+         y[ i ] = store.getY( i );
+         radius[ i ] = store.getRadius( i );
+      }
+      final HierarchicalGrid grid = new HierarchicalGrid();
+      grid.build( x, y, radius, count );
+
+      final CollisionResolver resolver = new CollisionResolver( new StoreCollidingBodies( this, store ), grid, settings.getTimeStep() );
+      for( int i = 0; i < count; i++ )
+      {
+         resolver.resolve( i );
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final BodyStore store )
+   {
+      for( final int index : extent )
+      {
+         if( store.getMass( index ) == 0 )
+         {
+            store.remove( index );
+         }
+      }
+   }
+}
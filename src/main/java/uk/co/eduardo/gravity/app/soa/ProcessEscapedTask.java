@@ -0,0 +1,57 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Removes the bodies that have moved so far from the most massive body that they are no longer part of the system.
+ *
+ * @author Ed
+ */
+public class ProcessEscapedTask extends AbstractProcessStoreTask
+{
+   private final double largestX;
+
+   private final double largestY;
+
+   /**
+    * Initializes a new ProcessEscapedTask object.
+    *
+    * @param store the bodies to process.
+    * @param settings the applicaiton settings.
+    */
+   public ProcessEscapedTask( final BodyStore store, final Settings settings )
+   {
+      super( store, settings );
+
+      int largest = -1;
+      for( int i = 0; i < store.size(); i++ )
+      {
+         if( ( largest < 0 ) || ( store.getMass( i ) > store.getMass( largest ) ) )
+         {
+            largest = i;
+         }
+      }
+      this.largestX = largest < 0 ? 0 : store.getX( largest );
+      this.largestY = largest < 0 ? 0 : store.getY( largest );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final BodyStore store )
+   {
+      final double escapeDistance = getSettings().getSpaceExtent() * 20;
+
+      for( final int index : extent )
+      {
+         final double dx = store.getX( index ) - this.largestX;
+         final double dy = store.getY( index ) - this.largestY;
+         if( Math.sqrt( ( dx * dx ) + ( dy * dy ) ) >= escapeDistance )
+         {
+            store.remove( index );
+         }
+      }
+   }
+}
@@ -0,0 +1,80 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates and applies the net force on a body by summing the force from every other body.
+ * <p>
+ * The positions and masses are copied when the task is created, so that the bodies can be moved in parallel without changing the
+ * forces on the bodies that have not been moved yet.
+ *
+ * @author Ed
+ */
+public class ProcessResultantForceTask extends AbstractProcessStoreTask
+{
+   private final double[] x;
+
+   private final double[] y;
+
+   private final double[] mass;
+
+   /**
+    * Initializes a new ProcessResultantForceTask object.
+    *
+    * @param store the bodies to process.
+    * @param settings the applicaiton settings.
+    */
+   public ProcessResultantForceTask( final BodyStore store, final Settings settings )
+   {
+      super( store, settings );
+
+      final int count = store.size();
+      this.x = new double[ count ];
+      this.y = new double[ count ];
+      this.mass = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         this.x[ i ] = store.getX( i );
+         this.y[ i ] = store.getY( i );
+         this.mass[ i ] = store.getMass( i );
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final BodyStore store )
+   {
+      final int seconds = getSettings().getTimeStep();
+      for( final int index : extent )
+      {
+         double forceX = 0;
+         double forceY = 0;
+         for( int other = 0; other < this.mass.length; other++ )
+         {
+            if( other == index )
+            {
+               continue;
+            }
+
+            // The force is in the direction between this and the other.
+            final double dx = this.x[ other ] - this.x[ index ];
+            final double dy = this.y[ other ] - this.y[ index ];
+            final double r = Math.sqrt( ( dx * dx ) + ( dy * dy ) );
+            final double force = Constants.G * ( ( this.mass[ index ] * this.mass[ other ] ) / ( r * r ) );
+            forceX += ( dx / r ) * force;
+            forceY += ( dy / r ) * force;
+         }
+
+         final double velocityX = store.getVelocityX( index ) + ( ( forceX / this.mass[ index ] ) * seconds );
+         final double velocityY = store.getVelocityY( index ) + ( ( forceY / this.mass[ index ] ) * seconds );
+         store.setVelocityX( index, velocityX );
+         store.setVelocityY( index, velocityY );
+         store.setX( index, this.x[ index ] + ( velocityX * seconds ) );
+         store.setY( index, this.y[ index ] + ( velocityY * seconds ) );
+      }
+   }
+}
@@ -0,0 +1,67 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates and applies the net force on a body using a {@link ForceSolver} rather than by summing over every other body.
+ *
+ * @author Ed
+ */
+public class ProcessSolverForceTask extends AbstractProcessStoreTask
+{
+   private final ForceSolver solver;
+
+   private final double[] ax;
+
+   private final double[] ay;
+
+   /**
+    * Initializes a new ProcessSolverForceTask object. This prepares the solver with the positions of the bodies.
+    *
+    * @param store the bodies to process.
+    * @param settings the applicaiton settings.
+    * @param solver the solver used to calculate the acceleration of each body.
+    */
+   public ProcessSolverForceTask( final BodyStore store, final Settings settings, final ForceSolver solver )
+   {
+      super( store, settings );
+      this.solver = solver;
+
+      final int count = store.size();
+      final double[] x = new double[ count ];
+      final double[] y = new double[ count ];
+      final double[] mass = new double[ count ];
+      for( int i = 0; i < count; i++ )
+      {
+         x[ i ] = store.getX( i );
+         y[ i ] = store.getY( i );
+         mass[ i ] = store.getMass( i );
+      }
+
+      this.ax = new double[ count ];
+      this.ay = new double[ count ];
+      solver.prepare( x, y, mass, count );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void execute( final Extent extent, final BodyStore store )
+   {
+      this.solver.accelerate( extent, this.ax, this.ay );
+
+      final int seconds = getSettings().getTimeStep();
+      for( final int index : extent )
+      {
+         final double velocityX = store.getVelocityX( index ) + ( this.ax[ index ] * seconds );
+         final double velocityY = store.getVelocityY( index ) + ( this.ay[ index ] * seconds );
+         store.setVelocityX( index, velocityX );
+         store.setVelocityY( index, velocityY );
+         store.setX( index, store.getX( index ) + ( velocityX * seconds ) );
+         store.setY( index, store.getY( index ) + ( velocityY * seconds ) );
+      }
+   }
+}
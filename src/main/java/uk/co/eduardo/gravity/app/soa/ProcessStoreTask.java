@@ -0,0 +1,28 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.MergeEvent;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+
+/**
+ * A task that can be partitioned that will process the bodies in a {@link BodyStore} in place.
+ *
+ * @author Ed
+ */
+public interface ProcessStoreTask extends ExtentTask
+{
+   /**
+    * @return the extent of indices in the store.
+    */
+   Extent getExtent();
+
+   /**
+    * Gets the merges between bodies that happened during the task. This will only contain any content after the task has been
+    * run.
+    *
+    * @return the merges, in no particular order.
+    */
+   List< MergeEvent > getMerges();
+}
@@ -0,0 +1,137 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import uk.co.eduardo.gravity.app.CollidingBodies;
+import uk.co.eduardo.gravity.app.CollisionResolver;
+
+/**
+ * The bodies in a {@link BodyStore} collided by a {@link CollisionResolver}, which records the bodies that are swallowed whole with
+ * a task.
+ *
+ * @author Ed
+ */
+final class StoreCollidingBodies implements CollidingBodies
+{
+   private final AbstractProcessStoreTask task;
+
+   private final BodyStore store;
+
+   /**
+    * Initializes a new StoreCollidingBodies object.
+    *
+    * @param task the task with which to record the bodies that are swallowed whole.
+    * @param store the bodies.
+    */
+   StoreCollidingBodies( final AbstractProcessStoreTask task, final BodyStore store )
+   {
+      this.task = task;
+      this.store = store;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return this.store.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getId( final int body )
+   {
+      return this.store.getId( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getMass( final int body )
+   {
+      return this.store.getMass( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setMass( final int body, final double mass )
+   {
+      this.store.setMass( body, mass );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getDensity( final int body )
+   {
+      return this.store.getDensity( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.store.getRadius( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setRadius( final int body, final double radius )
+   {
+      this.store.setRadius( body, radius );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getX( final int body )
+   {
+      return this.store.getX( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getY( final int body )
+   {
+      return this.store.getY( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityX( final int body )
+   {
+      return this.store.getVelocityX( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getVelocityY( final int body )
+   {
+      return this.store.getVelocityY( body );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void merged( final int body, final long absorber, final long absorbed )
+   {
+      this.task.merged( absorber, absorbed );
+   }
+}
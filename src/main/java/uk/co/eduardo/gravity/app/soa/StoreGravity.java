@@ -0,0 +1,94 @@
+package uk.co.eduardo.gravity.app.soa;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.app.MergeEvent;
+import uk.co.eduardo.gravity.app.OrbitalBodyFactory;
+import uk.co.eduardo.gravity.app.RandomBodyFactory;
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.force.ForceSolvers;
+import uk.co.eduardo.gravity.math.Body;
+import uk.co.eduardo.gravity.task.DefaultPartitionExecutor;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Entry point into the gravity application that keeps the bodies in a {@link BodyStore} rather than as a list of objects.
+ * <p>
+ * There is no display. Each iteration prints the same line as the other entry points, and the rate of iterations is printed
+ * after every update interval. The store is chosen with the {@value BodyStores#StoreProperty} system property.
+ *
+ * @author Ed
+ */
+public class StoreGravity
+{
+   /**
+    * @param args ignored.
+    */
+   public static void main( final String[] args )
+   {
+      final Settings settings = new Settings( 10_000, 20, 5, 500, 1_000_000d, 100_000d, 1_000, true, true )
+                                        .setTimeStep( Integer.getInteger( Settings.TimeStepProperty, 1 ).intValue() );
+      final PartitionExecutor executor = DefaultPartitionExecutor.getInstance();
+      final ForceSolver solver = ForceSolvers.fromSystemProperty( executor );
+
+      final BodyStore store = createInitialBodies( settings );
+
+      final long start = System.nanoTime();
+
+      for( int i = 0; ( i < settings.getIterationCount() ) && ( store.size() > 0 ); i++ )
+      {
+         ProcessStoreTask task;
+
+         task = new ProcessCollisionsTask( store, settings );
+         executor.partitionTask( task.getExtent(), task );
+         store.compact( executor );
+         MergeEvent.raise( task.getMerges() );
+
+         task = new ProcessEscapedTask( store, settings );
+         executor.partitionTask( task.getExtent(), task );
+         store.compact( executor );
+
+         if( solver == null )
+         {
+            task = new ProcessResultantForceTask( store, settings );
+         }
+         else
+         {
+            task = new ProcessSolverForceTask( store, settings, solver );
+         }
+         executor.partitionTask( task.getExtent(), task );
+
+         double totalMass = 0;
+         for( int b = 0; b < store.size(); b++ )
+         {
+            totalMass += store.getMass( b );
+         }
+         System.out.printf( "%d\t%d\t%d\t%f\n", i, ( i / settings.getIterationsPerUpdate() ) + 1, store.size(), totalMass ); //$NON-NLS-1$
+
+         if( ( i % settings.getIterationsPerUpdate() ) == 0 )
+         {
+            System.out.println( i / ( ( System.nanoTime() - start ) / 1_000_000_000d ) );
+         }
+      }
+   }
+
+   private static BodyStore createInitialBodies( final Settings settings )
+   {
+      final List< Body > bodies;
+      if( settings.isCreateInitialCentralBody() )
+      {
+         bodies = new OrbitalBodyFactory().create( settings );
+      }
+      else
+      {
+         bodies = new RandomBodyFactory().create( settings );
+      }
+      final BodyStore store = BodyStores.fromSystemProperty( bodies.size() );
+      for( final Body b : bodies )
+      {
+         store.add( b.id, b.mass, b.density, b.position.x, b.position.y, b.velocity.x, b.velocity.y );
+      }
+      return store;
+   }
+}
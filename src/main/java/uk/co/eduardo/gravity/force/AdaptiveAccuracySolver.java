@@ -0,0 +1,359 @@
+package uk.co.eduardo.gravity.force;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Chooses between a ladder of solvers of increasing accuracy and cost so that the error in the acceleration stays within a budget
+ * while doing as little work as possible.
+ * <p>
+ * Every few iterations the acceleration of a small random sample of the bodies is compared against direct summation. If the RMS
+ * relative error is over budget the next more accurate solver is tried, until one is within budget. If it is well under budget the
+ * next cheaper solver is tried, and kept if it is still within budget. How accurate a given solver is depends heavily on how
+ * clustered the bodies are, so the choice follows the state of the simulation.
+ * <p>
+ * By default a solver other than the one in use is prepared in full before the sample is taken with it. A subclass whose solvers
+ * can be sampled more cheaply, such as those of {@link #barnesHut(PartitionExecutor, double)}, which share one tree and walk it
+ * for the sampled bodies alone, may override {@link #prepareSample(ForceSolver, double[], double[], double[], int)},
+ * {@link #probe(ForceSolver, double[], double[], double[], int)}, {@link #sample(ForceSolver, int, double[], double[])} and
+ * {@link #select(ForceSolver, double[], double[], double[], int)}.
+ *
+ * @author Ed
+ */
+public class AdaptiveAccuracySolver implements ForceSolver
+{
+   /** The default budget for the RMS relative error of the acceleration. */
+   public static final double DefaultBudget = 1e-2;
+
+   /** The default number of iterations between samples. */
+   public static final int DefaultInterval = 10;
+
+   /** The default number of bodies sampled. */
+   public static final int DefaultSamples = 64;
+
+   /** The system property giving the error budget. */
+   public static final String BudgetProperty = "forceErrorBudget"; //$NON-NLS-1$
+
+   /** A cheaper solver is only tried if the error is below this fraction of the budget. */
+   private static final double Slack = 0.5;
+
+   private static final double[] BarnesHutThetas =
+   {
+      1.0, 0.8, 0.7, 0.6, 0.5, 0.4, 0.3, 0.2, 0.1
+   };
+
+   private static final int MinimumFmmOrder = 2;
+
+   private static final int MaximumFmmOrder = 12;
+
+   private final List< ForceSolver > ladder;
+
+   private final double budget;
+
+   private final int interval;
+
+   private final int samples;
+
+   private final DirectSolver direct = new DirectSolver();
+
+   private final Random random = new Random( 1 );
+
+   private int level;
+
+   private int iteration;
+
+   private double error = Double.NaN;
+
+   private double[] sampleX = new double[ 0 ];
+
+   private double[] sampleY = new double[ 0 ];
+
+   /**
+    * Initializes a new AdaptiveAccuracySolver object.
+    *
+    * @param ladder the solvers to choose between, ordered from the cheapest and least accurate to the most accurate.
+    * @param budget the largest acceptable RMS relative error of the acceleration.
+    * @param interval the number of iterations between samples.
+    * @param samples the number of bodies sampled.
+    */
+   public AdaptiveAccuracySolver( final List< ForceSolver > ladder, final double budget, final int interval, final int samples )
+   {
+      if( ladder.isEmpty() || ( budget <= 0 ) || ( interval < 1 ) || ( samples < 1 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.ladder = Collections.unmodifiableList( new ArrayList<>( ladder ) );
+      this.budget = budget;
+      this.interval = interval;
+      this.samples = samples;
+      this.level = ladder.size() / 2;
+   }
+
+   /**
+    * Creates a solver that adapts the opening angle of a Barnes-Hut tree.
+    * <p>
+    * The opening angle only affects how the tree is walked, so every solver in the ladder shares one tree. Only the solver in use
+    * is prepared, and the others are sampled by walking the tree for the sampled bodies alone.
+    *
+    * @param executor the executor over which the tree is built.
+    * @param budget the largest acceptable RMS relative error of the acceleration.
+    * @return the solver.
+    */
+   public static AdaptiveAccuracySolver barnesHut( final PartitionExecutor executor, final double budget )
+   {
+      final BarnesHutSolver first = new BarnesHutSolver( executor, BarnesHutThetas[ 0 ], BarnesHutSolver.DefaultLeafCapacity, true );
+      final List< ForceSolver > ladder = new ArrayList<>();
+      for( final double theta : BarnesHutThetas )
+      {
+         ladder.add( first.withTheta( theta ) );
+      }
+      return new AdaptiveAccuracySolver( ladder, budget, DefaultInterval, DefaultSamples )
+      {
+         @Override
+         protected void prepareSample( final ForceSolver solver,
+                                       final double[] x,
+                                       final double[] y,
+                                       final double[] mass,
+                                       final int count )
+         {
+            ( (BarnesHutSolver) solver ).prepareTree( x, y, mass, count );
+         }
+
+         @Override
+         protected void probe( final ForceSolver solver,
+                               final double[] x,
+                               final double[] y,
+                               final double[] mass,
+                               final int count )
+         {
+            // Every solver shares the tree, which has already been prepared.
+         }
+
+         @Override
+         protected void sample( final ForceSolver solver, final int body, final double[] ax, final double[] ay )
+         {
+            ( (BarnesHutSolver) solver ).walk( new Extent( body, body ), ax, ay );
+         }
+
+         @Override
+         protected void select( final ForceSolver solver,
+                                final double[] x,
+                                final double[] y,
+                                final double[] mass,
+                                final int count )
+         {
+            solver.prepare( x, y, mass, count );
+         }
+      };
+   }
+
+   /**
+    * Creates a solver that adapts the expansion order of the fast multipole method.
+    *
+    * @param executor the executor over which the expansions are partitioned.
+    * @param budget the largest acceptable RMS relative error of the acceleration.
+    * @return the solver.
+    */
+   public static AdaptiveAccuracySolver fmm( final PartitionExecutor executor, final double budget )
+   {
+      final List< ForceSolver > ladder = new ArrayList<>();
+      for( int order = MinimumFmmOrder; order <= MaximumFmmOrder; order++ )
+      {
+         ladder.add( new FmmSolver( executor, order, FmmSolver.DefaultLeafSize ) );
+      }
+      return new AdaptiveAccuracySolver( ladder, budget, DefaultInterval, DefaultSamples );
+   }
+
+   /**
+    * Gets the error budget from the {@value #BudgetProperty} system property.
+    *
+    * @return the budget, or {@link #DefaultBudget} if the property is not set.
+    */
+   public static double budgetFromSystemProperty()
+   {
+      final String value = System.getProperty( BudgetProperty );
+      return value == null ? DefaultBudget : Double.parseDouble( value );
+   }
+
+   /**
+    * Gets the solver currently in use.
+    *
+    * @return the current solver.
+    */
+   public ForceSolver getSolver()
+   {
+      return this.ladder.get( this.level );
+   }
+
+   /**
+    * Gets the RMS relative error measured the last time the bodies were sampled.
+    *
+    * @return the error, or NaN if the bodies have not been sampled yet.
+    */
+   public double getError()
+   {
+      return this.error;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      if( ( ( this.iteration++ % this.interval ) != 0 ) || ( count < 2 ) )
+      {
+         getSolver().prepare( x, y, mass, count );
+         return;
+      }
+      prepareSample( getSolver(), x, y, mass, count );
+
+      final int[] sample = new int[ Math.min( this.samples, count ) ];
+      for( int i = 0; i < sample.length; i++ )
+      {
+         sample[ i ] = this.random.nextInt( count );
+      }
+      this.direct.prepare( x, y, mass, count );
+      final double[][] exact = accelerations( this.direct, sample, count );
+
+      this.error = error( getSolver(), sample, exact, count );
+      while( ( this.error > this.budget ) && ( this.level < ( this.ladder.size() - 1 ) ) )
+      {
+         this.level++;
+         probe( getSolver(), x, y, mass, count );
+         this.error = error( getSolver(), sample, exact, count );
+      }
+
+      if( ( this.error < ( Slack * this.budget ) ) && ( this.level > 0 ) )
+      {
+         final ForceSolver cheaper = this.ladder.get( this.level - 1 );
+         probe( cheaper, x, y, mass, count );
+         final double cheaperError = error( cheaper, sample, exact, count );
+         if( cheaperError <= this.budget )
+         {
+            this.level--;
+            this.error = cheaperError;
+         }
+      }
+
+      select( getSolver(), x, y, mass, count );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      getSolver().accelerate( extent, ax, ay );
+   }
+
+   /**
+    * Gets the solver in use ready to be sampled, at the start of an iteration in which the bodies are sampled. By default it is
+    * prepared in full.
+    *
+    * @param solver the solver in use.
+    * @param x the x coordinates of the bodies in metres.
+    * @param y the y coordinates of the bodies in metres.
+    * @param mass the masses of the bodies in kilograms.
+    * @param count the number of bodies.
+    */
+   protected void prepareSample( final ForceSolver solver,
+                                 final double[] x,
+                                 final double[] y,
+                                 final double[] mass,
+                                 final int count )
+   {
+      solver.prepare( x, y, mass, count );
+   }
+
+   /**
+    * Gets a solver other than the one in use ready to be sampled. By default it is prepared in full, which also leaves it ready to
+    * be used.
+    *
+    * @param solver the solver from the ladder.
+    * @param x the x coordinates of the bodies in metres.
+    * @param y the y coordinates of the bodies in metres.
+    * @param mass the masses of the bodies in kilograms.
+    * @param count the number of bodies.
+    */
+   protected void probe( final ForceSolver solver, final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      solver.prepare( x, y, mass, count );
+   }
+
+   /**
+    * Calculates the acceleration of one sampled body with a solver that is in use or has been probed.
+    *
+    * @param solver the solver from the ladder.
+    * @param body the index of the body.
+    * @param ax the output x components of acceleration in metres/second<sup>2</sup>.
+    * @param ay the output y components of acceleration in metres/second<sup>2</sup>.
+    */
+   protected void sample( final ForceSolver solver, final int body, final double[] ax, final double[] ay )
+   {
+      solver.accelerate( new Extent( body, body ), ax, ay );
+   }
+
+   /**
+    * Gets the solver chosen at the end of an iteration in which the bodies are sampled ready to be used for the rest of the
+    * iteration. By default nothing needs to be done, since it was prepared in full when it was sampled.
+    *
+    * @param solver the solver from the ladder.
+    * @param x the x coordinates of the bodies in metres.
+    * @param y the y coordinates of the bodies in metres.
+    * @param mass the masses of the bodies in kilograms.
+    * @param count the number of bodies.
+    */
+   protected void select( final ForceSolver solver, final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      // Probing has already prepared it.
+   }
+
+   private double error( final ForceSolver solver, final int[] sample, final double[][] exact, final int count )
+   {
+      final double[][] approximate = accelerations( solver, sample, count );
+      double sum = 0;
+      for( int i = 0; i < sample.length; i++ )
+      {
+         final double dx = approximate[ 0 ][ i ] - exact[ 0 ][ i ];
+         final double dy = approximate[ 1 ][ i ] - exact[ 1 ][ i ];
+         final double magnitude2 = ( exact[ 0 ][ i ] * exact[ 0 ][ i ] ) + ( exact[ 1 ][ i ] * exact[ 1 ][ i ] );
+         if( magnitude2 > 0 )
+         {
+            sum += ( ( dx * dx ) + ( dy * dy ) ) / magnitude2;
+         }
+      }
+      return Math.sqrt( sum / sample.length );
+   }
+
+   private double[][] accelerations( final ForceSolver solver, final int[] sample, final int count )
+   {
+      if( this.sampleX.length < count )
+      {
+         this.sampleX = new double[ count ];
+         this.sampleY = new double[ count ];
+      }
+
+      final double[][] result = new double[ 2 ][ sample.length ];
+      for( int i = 0; i < sample.length; i++ )
+      {
+         if( solver == this.direct )
+         {
+            solver.accelerate( new Extent( sample[ i ], sample[ i ] ), this.sampleX, this.sampleY );
+         }
+         else
+         {
+            sample( solver, sample[ i ], this.sampleX, this.sampleY );
+         }
+         result[ 0 ][ i ] = this.sampleX[ sample[ i ] ];
+         result[ 1 ][ i ] = this.sampleY[ sample[ i ] ];
+      }
+      return result;
+   }
+}
@@ -0,0 +1,281 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.spatial.QuadTree;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Approximates the gravitational acceleration using a Barnes-Hut quadtree. This costs O(N log N) per iteration rather than the
+ * O(N<sup>2</sup>) of summing over every pair of bodies.
+ * <p>
+ * By default the tree is only built in the first iteration and whenever it has degraded too far, and is otherwise
+ * {@link QuadTree#refit(double[], double[], double[], int, double, double) refit} to the new positions. This relies on the bodies
+ * being given in the same order in each iteration, which holds as long as the number of bodies does not change. When the solver is
+ * given an executor the tree is built in parallel.
+ * <p>
+ * With a group size, the tree is walked once for each group of up to that many nearby bodies rather than once for each body, and
+ * all of the accelerations are calculated in {@link #prepare(double[], double[], double[], int) prepare}, partitioned by group
+ * over the executor. {@link #accelerate(Extent, double[], double[]) accelerate} then only copies out the result.
+ *
+ * @author Ed
+ */
+public class BarnesHutSolver implements ForceSolver
+{
+   /** The default opening angle. */
+   public static final double DefaultTheta = 0.7;
+
+   /** The default number of bodies held by each leaf of the tree. */
+   public static final int DefaultLeafCapacity = 8;
+
+   /** The default number of bodies sharing a walk of the tree when the solver has an executor. */
+   public static final int DefaultGroupSize = 32;
+
+   /** The largest fraction of bodies that may leave the cell of their leaf before the tree is built again. */
+   public static final double MaxEscapedFraction = 0.05;
+
+   /** The largest ratio of the bounds of a node to its cell before the tree is built again. */
+   public static final double MaxInflation = 1.5;
+
+   private final QuadTree tree;
+
+   private final double theta;
+
+   private final boolean refit;
+
+   private final PartitionExecutor executor;
+
+   private final int groupSize;
+
+   private double[] ax = new double[ 0 ];
+
+   private double[] ay = new double[ 0 ];
+
+   /**
+    * Initializes a new BarnesHutSolver object with the default opening angle.
+    */
+   public BarnesHutSolver()
+   {
+      this( DefaultTheta );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object.
+    *
+    * @param theta the opening angle. Smaller values are more accurate but slower. Zero is equivalent to direct summation.
+    */
+   public BarnesHutSolver( final double theta )
+   {
+      this( theta, DefaultLeafCapacity );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object.
+    *
+    * @param theta the opening angle. Smaller values are more accurate but slower. Zero is equivalent to direct summation.
+    * @param leafCapacity the maximum number of bodies held by each leaf of the tree.
+    */
+   public BarnesHutSolver( final double theta, final int leafCapacity )
+   {
+      this( theta, leafCapacity, true );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object.
+    *
+    * @param theta the opening angle. Smaller values are more accurate but slower. Zero is equivalent to direct summation.
+    * @param leafCapacity the maximum number of bodies held by each leaf of the tree.
+    * @param refit whether to refit the tree between iterations rather than building it from scratch every time.
+    */
+   public BarnesHutSolver( final double theta, final int leafCapacity, final boolean refit )
+   {
+      this( null, theta, leafCapacity, refit );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object with the default opening angle that builds its tree in parallel.
+    *
+    * @param executor the executor over which the tree is built.
+    */
+   public BarnesHutSolver( final PartitionExecutor executor )
+   {
+      this( executor, DefaultTheta, DefaultLeafCapacity, true );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object.
+    *
+    * @param executor the executor over which the tree is built and walked by group, or <code>null</code> to build it serially and
+    *           walk it for each body.
+    * @param theta the opening angle. Smaller values are more accurate but slower. Zero is equivalent to direct summation.
+    * @param leafCapacity the maximum number of bodies held by each leaf of the tree.
+    * @param refit whether to refit the tree between iterations rather than building it from scratch every time.
+    */
+   public BarnesHutSolver( final PartitionExecutor executor, final double theta, final int leafCapacity, final boolean refit )
+   {
+      this( executor, theta, leafCapacity, refit, executor == null ? 0 : DefaultGroupSize );
+   }
+
+   /**
+    * Initializes a new BarnesHutSolver object.
+    *
+    * @param executor the executor over which the tree is built and walked by group, or <code>null</code> to do both serially.
+    * @param theta the opening angle. Smaller values are more accurate but slower. Zero is equivalent to direct summation.
+    * @param leafCapacity the maximum number of bodies held by each leaf of the tree.
+    * @param refit whether to refit the tree between iterations rather than building it from scratch every time.
+    * @param groupSize the largest number of bodies that share a walk of the tree, or zero to walk the tree for each body.
+    */
+   public BarnesHutSolver( final PartitionExecutor executor,
+                           final double theta,
+                           final int leafCapacity,
+                           final boolean refit,
+                           final int groupSize )
+   {
+      this( executor, theta, new QuadTree( leafCapacity ), refit, groupSize );
+   }
+
+   private BarnesHutSolver( final PartitionExecutor executor,
+                            final double theta,
+                            final QuadTree tree,
+                            final boolean refit,
+                            final int groupSize )
+   {
+      if( ( theta < 0 ) || ( groupSize < 0 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.theta = theta;
+      this.refit = refit;
+      this.executor = executor;
+      this.groupSize = groupSize;
+      this.tree = tree;
+   }
+
+   /**
+    * Creates a solver with another opening angle that shares the tree of this one. Preparing either solver builds or refits the
+    * tree for both, so the other can then {@link #walk(Extent, double[], double[]) walk} it without being prepared itself.
+    *
+    * @param newTheta the opening angle of the new solver.
+    * @return the new solver.
+    */
+   public BarnesHutSolver withTheta( final double newTheta )
+   {
+      return new BarnesHutSolver( this.executor, newTheta, this.tree, this.refit, this.groupSize );
+   }
+
+   /**
+    * Gets the opening angle.
+    *
+    * @return the opening angle.
+    */
+   public double getTheta()
+   {
+      return this.theta;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      prepareTree( x, y, mass, count );
+      if( this.groupSize > 0 )
+      {
+         walkGroups( count );
+      }
+   }
+
+   /**
+    * Builds or refits the tree for a new set of bodies without calculating any accelerations, so that the tree can be
+    * {@link #walk(Extent, double[], double[]) walked} for a few of them.
+    *
+    * @param x the x coordinates of the bodies in metres.
+    * @param y the y coordinates of the bodies in metres.
+    * @param mass the masses of the bodies in kilograms.
+    * @param count the number of bodies.
+    */
+   public void prepareTree( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      if( !this.refit || !this.tree.refit( x, y, mass, count, MaxEscapedFraction, MaxInflation ) )
+      {
+         if( this.executor == null )
+         {
+            this.tree.build( x, y, mass, count );
+         }
+         else
+         {
+            this.tree.build( x, y, mass, count, this.executor );
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      if( this.groupSize == 0 )
+      {
+         this.tree.accelerate( extent, this.theta, ax, ay );
+         return;
+      }
+
+      for( final int index : extent )
+      {
+         ax[ index ] = this.ax[ index ];
+         ay[ index ] = this.ay[ index ];
+      }
+   }
+
+   /**
+    * Calculates the acceleration of each body within the extent by walking the tree for that body alone, whether or not bodies
+    * share walks. This is far cheaper than preparing the solver when only a few bodies are needed, but the tree must already have
+    * been prepared for the bodies, by this solver or by one that shares its tree, even if only with
+    * {@link #prepareTree(double[], double[], double[], int) prepareTree}.
+    *
+    * @param extent the extent of body indices for which to calculate the acceleration.
+    * @param ax the output x components of acceleration in metres/second<sup>2</sup>.
+    * @param ay the output y components of acceleration in metres/second<sup>2</sup>.
+    */
+   public void walk( final Extent extent, final double[] ax, final double[] ay )
+   {
+      this.tree.accelerate( extent, this.theta, ax, ay );
+   }
+
+   private void walkGroups( final int count )
+   {
+      if( this.ax.length < count )
+      {
+         this.ax = new double[ count ];
+         this.ay = new double[ count ];
+      }
+
+      final int groupCount = this.tree.findGroups( this.groupSize );
+      if( groupCount == 0 )
+      {
+         return;
+      }
+
+      final Extent groups = new Extent( 0, groupCount - 1 );
+      final ExtentTask task = new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final BarnesHutSolver solver = BarnesHutSolver.this;
+            solver.tree.accelerateGroups( extent, solver.theta, solver.ax, solver.ay );
+         }
+      };
+
+      if( this.executor == null )
+      {
+         task.execute( groups );
+      }
+      else
+      {
+         this.executor.partitionTask( groups, task );
+      }
+   }
+}
@@ -0,0 +1,62 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates the exact gravitational acceleration by summing over every other body. This costs O(N<sup>2</sup>) per iteration
+ * and is the reference against which the approximate solvers are measured.
+ *
+ * @author Ed
+ */
+public class DirectSolver implements ForceSolver
+{
+   private double[] x;
+
+   private double[] y;
+
+   private double[] mass;
+
+   private int count;
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      this.x = x;
+      this.y = y;
+      this.mass = mass;
+      this.count = count;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      for( final int index : extent )
+      {
+         final double bx = this.x[ index ];
+         final double by = this.y[ index ];
+         double sumX = 0;
+         double sumY = 0;
+         for( int other = 0; other < this.count; other++ )
+         {
+            final double dx = this.x[ other ] - bx;
+            final double dy = this.y[ other ] - by;
+            final double r2 = ( dx * dx ) + ( dy * dy );
+            if( ( other != index ) && ( r2 > 0 ) )
+            {
+               final double a = ( Constants.G * this.mass[ other ] ) / ( r2 * Math.sqrt( r2 ) );
+               sumX += a * dx;
+               sumY += a * dy;
+            }
+         }
+         ax[ index ] = sumX;
+         ay[ index ] = sumY;
+      }
+   }
+}
@@ -0,0 +1,173 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Radix-2 complex fast Fourier transform of a fixed power of two length, in one and two dimensions.
+ * <p>
+ * The inverse transform is scaled by 1/n so that a forward transform followed by an inverse transform is the identity. Once
+ * created, a transform may be used from any number of threads.
+ *
+ * @author Ed
+ */
+public class Fft
+{
+   private final int length;
+
+   private final int[] reversed;
+
+   private final double[] cos;
+
+   private final double[] sin;
+
+   /**
+    * Initializes a new Fft object.
+    *
+    * @param length the length of the transform, which must be a power of two.
+    */
+   public Fft( final int length )
+   {
+      if( ( length < 1 ) || ( Integer.bitCount( length ) != 1 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+
+      this.length = length;
+      this.reversed = new int[ length ];
+      final int bits = Integer.numberOfTrailingZeros( length );
+      for( int i = 0; i < length; i++ )
+      {
+         this.reversed[ i ] = bits == 0 ? 0 : Integer.reverse( i ) >>> ( 32 - bits );
+      }
+
+      this.cos = new double[ length / 2 ];
+      this.sin = new double[ length / 2 ];
+      for( int i = 0; i < ( length / 2 ); i++ )
+      {
+         this.cos[ i ] = Math.cos( ( 2 * Math.PI * i ) / length );
+         this.sin[ i ] = Math.sin( ( 2 * Math.PI * i ) / length );
+      }
+   }
+
+   /**
+    * Gets the length of the transform.
+    *
+    * @return the length.
+    */
+   public int getLength()
+   {
+      return this.length;
+   }
+
+   /**
+    * Transforms a contiguous sequence of complex values in place.
+    *
+    * @param re the real parts.
+    * @param im the imaginary parts.
+    * @param offset the index of the first value.
+    * @param inverse whether to perform the inverse transform.
+    */
+   public void transform( final double[] re, final double[] im, final int offset, final boolean inverse )
+   {
+      final int n = this.length;
+      for( int i = 0; i < n; i++ )
+      {
+         final int j = this.reversed[ i ];
+         if( j > i )
+         {
+            final double tr = re[ offset + i ];
+            final double ti = im[ offset + i ];
+            re[ offset + i ] = re[ offset + j ];
+            im[ offset + i ] = im[ offset + j ];
+            re[ offset + j ] = tr;
+            im[ offset + j ] = ti;
+         }
+      }
+
+      final double sign = inverse ? 1 : -1;
+      for( int size = 2; size <= n; size <<= 1 )
+      {
+         final int half = size >> 1;
+         final int step = n / size;
+         for( int first = 0; first < n; first += size )
+         {
+            for( int k = 0; k < half; k++ )
+            {
+               final double wr = this.cos[ k * step ];
+               final double wi = sign * this.sin[ k * step ];
+               final int a = offset + first + k;
+               final int b = a + half;
+               final double tr = ( re[ b ] * wr ) - ( im[ b ] * wi );
+               final double ti = ( re[ b ] * wi ) + ( im[ b ] * wr );
+               re[ b ] = re[ a ] - tr;
+               im[ b ] = im[ a ] - ti;
+               re[ a ] += tr;
+               im[ a ] += ti;
+            }
+         }
+      }
+
+      if( inverse )
+      {
+         for( int i = 0; i < n; i++ )
+         {
+            re[ offset + i ] /= n;
+            im[ offset + i ] /= n;
+         }
+      }
+   }
+
+   /**
+    * Transforms a square grid of complex values in place, stored row by row. The rows and then the columns are partitioned over
+    * the executor.
+    *
+    * @param re the real parts.
+    * @param im the imaginary parts.
+    * @param inverse whether to perform the inverse transform.
+    * @param executor the executor over which to partition the rows and columns.
+    */
+   public void transform2D( final double[] re, final double[] im, final boolean inverse, final PartitionExecutor executor )
+   {
+      final int n = this.length;
+      final Extent lines = new Extent( 0, n - 1 );
+
+      executor.partitionTask( lines, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int row : extent )
+            {
+               transform( re, im, row * n, inverse );
+            }
+         }
+      } );
+
+      executor.partitionTask( lines, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            // Columns are copied out so that the transform itself works on contiguous memory.
+            final double[] columnRe = new double[ n ];
+            final double[] columnIm = new double[ n ];
+            for( final int column : extent )
+            {
+               for( int row = 0; row < n; row++ )
+               {
+                  columnRe[ row ] = re[ ( row * n ) + column ];
+                  columnIm[ row ] = im[ ( row * n ) + column ];
+               }
+               transform( columnRe, columnIm, 0, inverse );
+               for( int row = 0; row < n; row++ )
+               {
+                  re[ ( row * n ) + column ] = columnRe[ row ];
+                  im[ ( row * n ) + column ] = columnIm[ row ];
+               }
+            }
+         }
+      } );
+   }
+}
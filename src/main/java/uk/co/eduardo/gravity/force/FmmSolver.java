@@ -0,0 +1,662 @@
+package uk.co.eduardo.gravity.force;
+
+import java.util.Arrays;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Calculates the gravitational acceleration using the Fast Multipole Method, which costs O(N) per iteration.
+ * <p>
+ * Bodies exert a force proportional to 1/r<sup>2</sup>, so the potential is 1/r. This is not harmonic in the plane, which rules
+ * out the complex-valued expansions of the classic two dimensional FMM (they only apply to a logarithmic potential). Instead the
+ * multipole and local expansions are Cartesian Taylor series of 1/r truncated at a configurable order.
+ * <p>
+ * Space is divided into a uniform hierarchy of boxes with the leaf level chosen so that each leaf holds only a few bodies. The
+ * expansions are built by an upward pass (P2M, M2M), converted and pushed down by a downward pass (M2L, L2L), and the
+ * accelerations are then evaluated from the local expansion of each leaf plus a direct sum over the neighbouring leaves. Every
+ * pass is partitioned over boxes or bodies using a {@link PartitionExecutor}.
+ *
+ * @author Ed
+ */
+public class FmmSolver implements ForceSolver
+{
+   /** The default expansion order. */
+   public static final int DefaultOrder = 6;
+
+   /** The default average number of bodies per leaf box. */
+   public static final int DefaultLeafSize = 16;
+
+   /** The deepest level of the box hierarchy. */
+   public static final int MaxLevel = 8;
+
+   private final PartitionExecutor executor;
+
+   private final int order;
+
+   private final int leafSize;
+
+   // Expansion tables. Multi-index (a, b) with n = a + b is stored at n(n + 1)/2 + b.
+   private final int coefficientCount;
+
+   private final int derivativeCount;
+
+   private final int[] termA;
+
+   private final int[] termB;
+
+   private final double[] factorial;
+
+   private final int[] m2l;
+
+   private final int[] shift;
+
+   private final int[] evaluate;
+
+   // Per iteration state
+   private double[] x;
+
+   private double[] y;
+
+   private int bodyCount;
+
+   private int levels;
+
+   private int[] levelOffset = new int[ 0 ];
+
+   private double left;
+
+   private double bottom;
+
+   private double size;
+
+   private int[] boxCount = new int[ 0 ];
+
+   private int[] leafStart = new int[ 0 ];
+
+   private int[] leafOf = new int[ 0 ];
+
+   private double[] sortedX = new double[ 0 ];
+
+   private double[] sortedY = new double[ 0 ];
+
+   private double[] sortedMass = new double[ 0 ];
+
+   private double[] multipole = new double[ 0 ];
+
+   private double[] local = new double[ 0 ];
+
+   /**
+    * Initializes a new FmmSolver object with the default expansion order.
+    *
+    * @param executor the executor used to partition the upward and downward passes.
+    */
+   public FmmSolver( final PartitionExecutor executor )
+   {
+      this( executor, DefaultOrder, DefaultLeafSize );
+   }
+
+   /**
+    * Initializes a new FmmSolver object.
+    *
+    * @param executor the executor used to partition the upward and downward passes.
+    * @param order the order of the expansions. Higher orders are more accurate but slower.
+    * @param leafSize the average number of bodies per leaf box.
+    */
+   public FmmSolver( final PartitionExecutor executor, final int order, final int leafSize )
+   {
+      if( ( order < 1 ) || ( leafSize < 1 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+
+      this.executor = executor;
+      this.order = order;
+      this.leafSize = leafSize;
+
+      this.coefficientCount = termCount( order );
+      this.derivativeCount = termCount( 2 * order );
+      this.termA = new int[ this.derivativeCount ];
+      this.termB = new int[ this.derivativeCount ];
+      for( int n = 0; n <= ( 2 * order ); n++ )
+      {
+         for( int b = 0; b <= n; b++ )
+         {
+            this.termA[ index( n - b, b ) ] = n - b;
+            this.termB[ index( n - b, b ) ] = b;
+         }
+      }
+
+      this.factorial = new double[ ( 2 * order ) + 1 ];
+      this.factorial[ 0 ] = 1;
+      for( int n = 1; n < this.factorial.length; n++ )
+      {
+         this.factorial[ n ] = this.factorial[ n - 1 ] * n;
+      }
+
+      this.m2l = buildM2LTerms( order );
+      this.shift = buildShiftTerms( order );
+      this.evaluate = buildEvaluationTerms( order );
+   }
+
+   /**
+    * Gets the order of the expansions.
+    *
+    * @return the expansion order.
+    */
+   public int getOrder()
+   {
+      return this.order;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      this.x = x;
+      this.y = y;
+      this.bodyCount = count;
+      if( count == 0 )
+      {
+         return;
+      }
+
+      // Choose the depth so that the leaves hold leafSize bodies on average.
+      int depth = 0;
+      while( ( depth < MaxLevel ) && ( count > ( this.leafSize << ( 2 * depth ) ) ) )
+      {
+         depth++;
+      }
+      allocate( depth, count );
+      bin( x, y, mass, count );
+
+      upwardPass();
+      downwardPass();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      final int side = 1 << this.levels;
+      final double width = this.size / side;
+      final double[] powers = new double[ this.coefficientCount ];
+
+      for( final int index : extent )
+      {
+         final double bx = this.x[ index ];
+         final double by = this.y[ index ];
+         final int leaf = this.leafOf[ index ];
+         final int ix = leaf % side;
+         final int iy = leaf / side;
+
+         // Far field from the local expansion of the leaf.
+         final double sx = bx - ( this.left + ( ( ix + 0.5 ) * width ) );
+         final double sy = by - ( this.bottom + ( ( iy + 0.5 ) * width ) );
+         taylorTerms( sx, sy, this.order - 1, powers );
+
+         final int offset = ( this.levelOffset[ this.levels ] + leaf ) * this.coefficientCount;
+         double sumX = 0;
+         double sumY = 0;
+         for( int t = 0; t < this.evaluate.length; t += 3 )
+         {
+            sumX += this.local[ offset + this.evaluate[ t + 1 ] ] * powers[ this.evaluate[ t ] ];
+            sumY += this.local[ offset + this.evaluate[ t + 2 ] ] * powers[ this.evaluate[ t ] ];
+         }
+         sumX *= Constants.G;
+         sumY *= Constants.G;
+
+         // Near field from the bodies in this leaf and its neighbours.
+         for( int ny = Math.max( 0, iy - 1 ); ny <= Math.min( side - 1, iy + 1 ); ny++ )
+         {
+            for( int nx = Math.max( 0, ix - 1 ); nx <= Math.min( side - 1, ix + 1 ); nx++ )
+            {
+               final int neighbour = ( ny * side ) + nx;
+               final int end = this.leafStart[ neighbour + 1 ];
+               for( int k = this.leafStart[ neighbour ]; k < end; k++ )
+               {
+                  final double dx = this.sortedX[ k ] - bx;
+                  final double dy = this.sortedY[ k ] - by;
+                  final double r2 = ( dx * dx ) + ( dy * dy );
+                  if( r2 > 0 )
+                  {
+                     final double a = ( Constants.G * this.sortedMass[ k ] ) / ( r2 * Math.sqrt( r2 ) );
+                     sumX += a * dx;
+                     sumY += a * dy;
+                  }
+               }
+            }
+         }
+
+         ax[ index ] = sumX;
+         ay[ index ] = sumY;
+      }
+   }
+
+   private void allocate( final int depth, final int count )
+   {
+      this.levels = depth;
+      this.levelOffset = new int[ depth + 2 ];
+      for( int level = 1; level < this.levelOffset.length; level++ )
+      {
+         this.levelOffset[ level ] = this.levelOffset[ level - 1 ] + ( 1 << ( 2 * ( level - 1 ) ) );
+      }
+
+      final int boxes = this.levelOffset[ depth + 1 ];
+      final int leaves = 1 << ( 2 * depth );
+      if( this.boxCount.length != boxes )
+      {
+         this.boxCount = new int[ boxes ];
+         this.leafStart = new int[ leaves + 1 ];
+         this.multipole = new double[ boxes * this.coefficientCount ];
+         this.local = new double[ boxes * this.coefficientCount ];
+      }
+      else
+      {
+         Arrays.fill( this.boxCount, 0 );
+         Arrays.fill( this.multipole, 0 );
+         Arrays.fill( this.local, 0 );
+      }
+
+      if( this.leafOf.length < count )
+      {
+         this.leafOf = new int[ count ];
+         this.sortedX = new double[ count ];
+         this.sortedY = new double[ count ];
+         this.sortedMass = new double[ count ];
+      }
+   }
+
+   private void bin( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      double minX = x[ 0 ];
+      double maxX = x[ 0 ];
+      double minY = y[ 0 ];
+      double maxY = y[ 0 ];
+      for( int i = 1; i < count; i++ )
+      {
+         minX = Math.min( minX, x[ i ] );
+         maxX = Math.max( maxX, x[ i ] );
+         minY = Math.min( minY, y[ i ] );
+         maxY = Math.max( maxY, y[ i ] );
+      }
+      this.size = Math.max( Math.max( maxX - minX, maxY - minY ), Double.MIN_NORMAL );
+      this.left = minX;
+      this.bottom = minY;
+
+      // Counting sort of the bodies by leaf so that the near field reads contiguous memory.
+      final int side = 1 << this.levels;
+      final int leafOffset = this.levelOffset[ this.levels ];
+      for( int i = 0; i < count; i++ )
+      {
+         final int ix = Math.min( side - 1, (int) ( ( ( x[ i ] - minX ) / this.size ) * side ) );
+         final int iy = Math.min( side - 1, (int) ( ( ( y[ i ] - minY ) / this.size ) * side ) );
+         this.leafOf[ i ] = ( iy * side ) + ix;
+         this.boxCount[ leafOffset + this.leafOf[ i ] ]++;
+      }
+
+      this.leafStart[ 0 ] = 0;
+      for( int leaf = 0; leaf < ( side * side ); leaf++ )
+      {
+         this.leafStart[ leaf + 1 ] = this.leafStart[ leaf ] + this.boxCount[ leafOffset + leaf ];
+      }
+
+      final int[] next = Arrays.copyOf( this.leafStart, side * side );
+      for( int i = 0; i < count; i++ )
+      {
+         final int k = next[ this.leafOf[ i ] ]++;
+         this.sortedX[ k ] = x[ i ];
+         this.sortedY[ k ] = y[ i ];
+         this.sortedMass[ k ] = mass[ i ];
+      }
+   }
+
+   private void upwardPass()
+   {
+      final int leafSide = 1 << this.levels;
+
+      // P2M: form the multipole expansion of each leaf about its centre.
+      this.executor.partitionTask( new Extent( 0, ( leafSide * leafSide ) - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final double[] powers = new double[ FmmSolver.this.coefficientCount ];
+            for( final int leaf : extent )
+            {
+               final int box = FmmSolver.this.levelOffset[ FmmSolver.this.levels ] + leaf;
+               final int offset = box * FmmSolver.this.coefficientCount;
+               final double cx = centreX( FmmSolver.this.levels, leaf % leafSide );
+               final double cy = centreY( FmmSolver.this.levels, leaf / leafSide );
+               for( int k = FmmSolver.this.leafStart[ leaf ]; k < FmmSolver.this.leafStart[ leaf + 1 ]; k++ )
+               {
+                  taylorTerms( cx - FmmSolver.this.sortedX[ k ], cy - FmmSolver.this.sortedY[ k ], FmmSolver.this.order, powers );
+                  final double m = FmmSolver.this.sortedMass[ k ];
+                  for( int t = 0; t < FmmSolver.this.coefficientCount; t++ )
+                  {
+                     FmmSolver.this.multipole[ offset + t ] += m * powers[ t ];
+                  }
+               }
+            }
+         }
+      } );
+
+      // M2M: shift the children's expansions to the centre of their parent, one level at a time.
+      for( int level = this.levels - 1; level >= 0; level-- )
+      {
+         final int parentLevel = level;
+         final int side = 1 << level;
+         this.executor.partitionTask( new Extent( 0, ( side * side ) - 1 ), new ExtentTask()
+         {
+            @Override
+            public void execute( final Extent extent )
+            {
+               final double[] powers = new double[ FmmSolver.this.coefficientCount ];
+               final double childWidth = FmmSolver.this.size / ( side * 2 );
+               for( final int box : extent )
+               {
+                  final int parent = FmmSolver.this.levelOffset[ parentLevel ] + box;
+                  final int ix = box % side;
+                  final int iy = box / side;
+                  for( int q = 0; q < 4; q++ )
+                  {
+                     final int child = FmmSolver.this.levelOffset[ parentLevel + 1 ] +
+                                       ( ( ( 2 * iy ) + ( q >> 1 ) ) * side * 2 ) +
+                                       ( 2 * ix ) +
+                                       ( q & 1 );
+                     if( FmmSolver.this.boxCount[ child ] == 0 )
+                     {
+                        continue;
+                     }
+
+                     FmmSolver.this.boxCount[ parent ] += FmmSolver.this.boxCount[ child ];
+
+                     // The parent expansion is in powers of -(r - parent) = -(r - child) - (child - parent)
+                     final double d = ( ( q & 1 ) == 0 ? -0.5 : 0.5 ) * childWidth;
+                     final double e = ( ( q >> 1 ) == 0 ? -0.5 : 0.5 ) * childWidth;
+                     taylorTerms( -d, -e, FmmSolver.this.order, powers );
+                     translate( FmmSolver.this.multipole,
+                                child * FmmSolver.this.coefficientCount,
+                                FmmSolver.this.multipole,
+                                parent * FmmSolver.this.coefficientCount,
+                                powers,
+                                false );
+                  }
+               }
+            }
+         } );
+      }
+   }
+
+   private void downwardPass()
+   {
+      for( int level = 2; level <= this.levels; level++ )
+      {
+         final int currentLevel = level;
+         final int side = 1 << level;
+         final double width = this.size / side;
+
+         // Derivatives of 1/r for every possible offset in the interaction list at this level.
+         final double[] derivatives = new double[ 49 * this.derivativeCount ];
+         for( int dy = -3; dy <= 3; dy++ )
+         {
+            for( int dx = -3; dx <= 3; dx++ )
+            {
+               if( ( Math.abs( dx ) > 1 ) || ( Math.abs( dy ) > 1 ) )
+               {
+                  derivatives( dx * width, dy * width, derivatives, ( ( ( dy + 3 ) * 7 ) + dx + 3 ) * this.derivativeCount );
+               }
+            }
+         }
+
+         this.executor.partitionTask( new Extent( 0, ( side * side ) - 1 ), new ExtentTask()
+         {
+            @Override
+            public void execute( final Extent extent )
+            {
+               final double[] powers = new double[ FmmSolver.this.coefficientCount ];
+               final int offset = FmmSolver.this.levelOffset[ currentLevel ];
+               final int parentOffset = FmmSolver.this.levelOffset[ currentLevel - 1 ];
+               for( final int box : extent )
+               {
+                  final int target = offset + box;
+                  if( FmmSolver.this.boxCount[ target ] == 0 )
+                  {
+                     continue;
+                  }
+
+                  final int ix = box % side;
+                  final int iy = box / side;
+
+                  // L2L: inherit the parent's local expansion.
+                  if( currentLevel > 2 )
+                  {
+                     final int parent = parentOffset + ( ( iy / 2 ) * ( side / 2 ) ) + ( ix / 2 );
+                     final double d = ( ( ix & 1 ) == 0 ? -0.5 : 0.5 ) * width;
+                     final double e = ( ( iy & 1 ) == 0 ? -0.5 : 0.5 ) * width;
+                     taylorTerms( d, e, FmmSolver.this.order, powers );
+                     translate( FmmSolver.this.local,
+                                parent * FmmSolver.this.coefficientCount,
+                                FmmSolver.this.local,
+                                target * FmmSolver.this.coefficientCount,
+                                powers,
+                                true );
+                  }
+
+                  // M2L: the children of the parent's neighbours that are not adjacent to this box.
+                  final int firstX = ( ( ix / 2 ) - 1 ) * 2;
+                  final int firstY = ( ( iy / 2 ) - 1 ) * 2;
+                  for( int sy = Math.max( 0, firstY ); sy < Math.min( side, firstY + 6 ); sy++ )
+                  {
+                     for( int sx = Math.max( 0, firstX ); sx < Math.min( side, firstX + 6 ); sx++ )
+                     {
+                        final int dx = ix - sx;
+                        final int dy = iy - sy;
+                        final int source = offset + ( sy * side ) + sx;
+                        if( ( ( Math.abs( dx ) <= 1 ) && ( Math.abs( dy ) <= 1 ) ) || ( FmmSolver.this.boxCount[ source ] == 0 ) )
+                        {
+                           continue;
+                        }
+
+                        convert( source * FmmSolver.this.coefficientCount,
+                                 target * FmmSolver.this.coefficientCount,
+                                 derivatives,
+                                 ( ( ( dy + 3 ) * 7 ) + dx + 3 ) * FmmSolver.this.derivativeCount );
+                     }
+                  }
+               }
+            }
+         } );
+      }
+   }
+
+   private void convert( final int source, final int target, final double[] derivatives, final int derivativeOffset )
+   {
+      for( int t = 0; t < this.m2l.length; t += 3 )
+      {
+         this.local[ target + this.m2l[ t ] ] += this.multipole[ source + this.m2l[ t + 1 ] ] *
+                                                 derivatives[ derivativeOffset + this.m2l[ t + 2 ] ];
+      }
+   }
+
+   private void translate( final double[] from,
+                           final int fromOffset,
+                           final double[] to,
+                           final int toOffset,
+                           final double[] powers,
+                           final boolean towardsLeaves )
+   {
+      // Multipoles accumulate lower terms into higher ones, local expansions the reverse.
+      for( int t = 0; t < this.shift.length; t += 3 )
+      {
+         final int high = this.shift[ t ];
+         final int low = this.shift[ t + 1 ];
+         final int delta = this.shift[ t + 2 ];
+         if( towardsLeaves )
+         {
+            to[ toOffset + low ] += from[ fromOffset + high ] * powers[ delta ];
+         }
+         else
+         {
+            to[ toOffset + high ] += from[ fromOffset + low ] * powers[ delta ];
+         }
+      }
+   }
+
+   /**
+    * Calculates d<sup>a</sup> e<sup>b</sup> / (a! b!) for every multi-index up to the given order.
+    */
+   private void taylorTerms( final double d, final double e, final int maxOrder, final double[] terms )
+   {
+      terms[ 0 ] = 1;
+      for( int n = 1; n <= maxOrder; n++ )
+      {
+         final int row = index( n, 0 );
+         final int previous = index( n - 1, 0 );
+         for( int b = 0; b < n; b++ )
+         {
+            terms[ row + b ] = ( terms[ previous + b ] * d ) / ( n - b );
+         }
+         terms[ row + n ] = ( terms[ previous + ( n - 1 ) ] * e ) / n;
+      }
+   }
+
+   /**
+    * Calculates the partial derivatives of 1/r at (x, y) for every multi-index up to twice the order. This uses the recurrence
+    * n r<sup>2</sup> T<sub>k</sub> + (2n - 1) &Sigma; x<sub>i</sub> T<sub>k - e<sub>i</sub></sub> + (n - 1) &Sigma;
+    * T<sub>k - 2e<sub>i</sub></sub> = 0 for the Taylor coefficients T<sub>k</sub> = D<sub>k</sub> / k!.
+    */
+   private void derivatives( final double x, final double y, final double[] out, final int offset )
+   {
+      final double r2 = ( x * x ) + ( y * y );
+      final int maxOrder = 2 * this.order;
+      out[ offset ] = 1 / Math.sqrt( r2 );
+      for( int n = 1; n <= maxOrder; n++ )
+      {
+         for( int b = 0; b <= n; b++ )
+         {
+            final int a = n - b;
+            double sum = 0;
+            if( a >= 1 )
+            {
+               sum += ( ( 2 * n ) - 1 ) * x * out[ offset + index( a - 1, b ) ];
+            }
+            if( b >= 1 )
+            {
+               sum += ( ( 2 * n ) - 1 ) * y * out[ offset + index( a, b - 1 ) ];
+            }
+            if( a >= 2 )
+            {
+               sum += ( n - 1 ) * out[ offset + index( a - 2, b ) ];
+            }
+            if( b >= 2 )
+            {
+               sum += ( n - 1 ) * out[ offset + index( a, b - 2 ) ];
+            }
+            out[ offset + index( a, b ) ] = -sum / ( n * r2 );
+         }
+      }
+
+      for( int k = 0; k < this.derivativeCount; k++ )
+      {
+         out[ offset + k ] *= this.factorial[ this.termA[ k ] ] * this.factorial[ this.termB[ k ] ];
+      }
+   }
+
+   private double centreX( final int level, final int ix )
+   {
+      return this.left + ( ( ix + 0.5 ) * ( this.size / ( 1 << level ) ) );
+   }
+
+   private double centreY( final int level, final int iy )
+   {
+      return this.bottom + ( ( iy + 0.5 ) * ( this.size / ( 1 << level ) ) );
+   }
+
+   private static int index( final int a, final int b )
+   {
+      final int n = a + b;
+      return ( ( n * ( n + 1 ) ) / 2 ) + b;
+   }
+
+   private static int termCount( final int order )
+   {
+      return ( ( order + 1 ) * ( order + 2 ) ) / 2;
+   }
+
+   /**
+    * Terms (alpha, beta, alpha + beta) of L<sub>alpha</sub> += M<sub>beta</sub> D<sub>alpha + beta</sub>.
+    */
+   private static int[] buildM2LTerms( final int order )
+   {
+      final int[] terms = new int[ 3 * termCount( order ) * termCount( order ) ];
+      int t = 0;
+      for( int n = 0; n <= order; n++ )
+      {
+         for( int b = 0; b <= n; b++ )
+         {
+            for( int m = 0; m <= ( order - n ); m++ )
+            {
+               for( int d = 0; d <= m; d++ )
+               {
+                  terms[ t++ ] = index( n - b, b );
+                  terms[ t++ ] = index( m - d, d );
+                  terms[ t++ ] = index( ( n - b ) + ( m - d ), b + d );
+               }
+            }
+         }
+      }
+      return Arrays.copyOf( terms, t );
+   }
+
+   /**
+    * Terms (high, low, high - low) for every pair of multi-indices where low &le; high component-wise.
+    */
+   private static int[] buildShiftTerms( final int order )
+   {
+      final int[] terms = new int[ 3 * termCount( order ) * termCount( order ) ];
+      int t = 0;
+      for( int n = 0; n <= order; n++ )
+      {
+         for( int b = 0; b <= n; b++ )
+         {
+            final int a = n - b;
+            for( int la = 0; la <= a; la++ )
+            {
+               for( int lb = 0; lb <= b; lb++ )
+               {
+                  terms[ t++ ] = index( a, b );
+                  terms[ t++ ] = index( la, lb );
+                  terms[ t++ ] = index( a - la, b - lb );
+               }
+            }
+         }
+      }
+      return Arrays.copyOf( terms, t );
+   }
+
+   /**
+    * Terms (alpha, alpha + e<sub>x</sub>, alpha + e<sub>y</sub>) used to evaluate the gradient of a local expansion.
+    */
+   private static int[] buildEvaluationTerms( final int order )
+   {
+      final int[] terms = new int[ 3 * termCount( order - 1 ) ];
+      int t = 0;
+      for( int n = 0; n < order; n++ )
+      {
+         for( int b = 0; b <= n; b++ )
+         {
+            terms[ t++ ] = index( n - b, b );
+            terms[ t++ ] = index( ( n - b ) + 1, b );
+            terms[ t++ ] = index( n - b, b + 1 );
+         }
+      }
+      return terms;
+   }
+}
@@ -0,0 +1,36 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates the gravitational acceleration of a set of point masses.
+ * <p>
+ * A solver is prepared once per iteration with a snapshot of the positions and masses of the bodies. Once prepared, the
+ * accelerations may be calculated over any number of disjoint extents concurrently, which allows a solver to be driven by
+ * {@link uk.co.eduardo.gravity.task.PartitionExecutor#partitionTask(Extent, uk.co.eduardo.gravity.task.ExtentTask)
+ * partitionTask}.
+ *
+ * @author Ed
+ */
+public interface ForceSolver
+{
+   /**
+    * Prepares the solver for a new set of bodies. The solver may keep a reference to the arrays, which must not be modified until
+    * the accelerations have been calculated.
+    *
+    * @param x the x coordinates of the bodies in metres.
+    * @param y the y coordinates of the bodies in metres.
+    * @param mass the masses of the bodies in kilograms.
+    * @param count the number of bodies. Only the first <code>count</code> elements of each array are used.
+    */
+   void prepare( final double[] x, final double[] y, final double[] mass, final int count );
+
+   /**
+    * Calculates the acceleration of each body within the extent.
+    *
+    * @param extent the extent of body indices for which to calculate the acceleration.
+    * @param ax the output x components of acceleration in metres/second<sup>2</sup>.
+    * @param ay the output y components of acceleration in metres/second<sup>2</sup>.
+    */
+   void accelerate( final Extent extent, final double[] ax, final double[] ay );
+}
@@ -0,0 +1,79 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Factory for the available {@link ForceSolver} implementations.
+ *
+ * @author Ed
+ */
+public final class ForceSolvers
+{
+   /** The system property used to select a force solver. */
+   public static final String SolverProperty = "forceSolver"; //$NON-NLS-1$
+
+   private ForceSolvers()
+   {
+      // Static methods only
+   }
+
+   /**
+    * Creates the force solver named by the {@value #SolverProperty} system property.
+    *
+    * @param executor the executor used by solvers that partition their own work.
+    * @return the solver, or <code>null</code> if no solver has been selected and the bodies should sum over every pair directly.
+    */
+   public static ForceSolver fromSystemProperty( final PartitionExecutor executor )
+   {
+      return create( System.getProperty( SolverProperty ), executor );
+   }
+
+   /**
+    * Creates a force solver by name.
+    *
+    * @param name the name of the solver.
+    * @param executor the executor used by solvers that partition their own work.
+    * @return the solver, or <code>null</code> if the name is <code>null</code> or "direct" and the bodies should sum over every
+    *         pair directly.
+    */
+   public static ForceSolver create( final String name, final PartitionExecutor executor )
+   {
+      if( ( name == null ) || "direct".equals( name ) ) //$NON-NLS-1$
+      {
+         return null;
+      }
+
+      switch( name )
+      {
+         case "symmetric": //$NON-NLS-1$
+            return new SymmetricDirectSolver( executor );
+
+         case "tiled": //$NON-NLS-1$
+            return new TiledDirectSolver();
+
+         case "simd": //$NON-NLS-1$
+            return new SimdDirectSolver();
+
+         case "barnesHut": //$NON-NLS-1$
+            return new BarnesHutSolver( executor );
+
+         case "fmm": //$NON-NLS-1$
+            return new FmmSolver( executor );
+
+         case "adaptiveBarnesHut": //$NON-NLS-1$
+            return AdaptiveAccuracySolver.barnesHut( executor, AdaptiveAccuracySolver.budgetFromSystemProperty() );
+
+         case "adaptiveFmm": //$NON-NLS-1$
+            return AdaptiveAccuracySolver.fmm( executor, AdaptiveAccuracySolver.budgetFromSystemProperty() );
+
+         case "pm": //$NON-NLS-1$
+            return new ParticleMeshSolver( executor );
+
+         case "p3m": //$NON-NLS-1$
+            return new P3mSolver( executor );
+
+         default:
+            throw new IllegalArgumentException( "Unknown force solver: " + name ); //$NON-NLS-1$
+      }
+   }
+}
@@ -0,0 +1,65 @@
+package uk.co.eduardo.gravity.force;
+
+/**
+ * Schemes for assigning the mass of a body to the points of a grid, and for interpolating values on the grid back to the body.
+ * Grid points are at integer coordinates.
+ *
+ * @author Ed
+ */
+public enum MassAssignment
+{
+   /** Cloud-in-cell: each body is spread linearly over the 2 x 2 nearest grid points. */
+   CloudInCell( 2 )
+   {
+      @Override
+      int weights( final double u, final double[] weights )
+      {
+         final int first = (int) Math.floor( u );
+         final double f = u - first;
+         weights[ 0 ] = 1 - f;
+         weights[ 1 ] = f;
+         return first;
+      }
+   },
+
+   /** Triangular-shaped cloud: each body is spread quadratically over the 3 x 3 nearest grid points. */
+   TriangularShapedCloud( 3 )
+   {
+      @Override
+      int weights( final double u, final double[] weights )
+      {
+         final int nearest = (int) Math.floor( u + 0.5 );
+         final double d = u - nearest;
+         weights[ 0 ] = 0.5 * ( 0.5 - d ) * ( 0.5 - d );
+         weights[ 1 ] = 0.75 - ( d * d );
+         weights[ 2 ] = 0.5 * ( 0.5 + d ) * ( 0.5 + d );
+         return nearest - 1;
+      }
+   };
+
+   private final int width;
+
+   private MassAssignment( final int width )
+   {
+      this.width = width;
+   }
+
+   /**
+    * Gets the number of grid points along each axis to which a body is assigned.
+    *
+    * @return the width of the stencil.
+    */
+   public int getWidth()
+   {
+      return this.width;
+   }
+
+   /**
+    * Calculates the weights along one axis.
+    *
+    * @param u the coordinate in grid units.
+    * @param weights the output weights, which must have at least {@link #getWidth()} elements.
+    * @return the index of the grid point corresponding to the first weight.
+    */
+   abstract int weights( final double u, final double[] weights );
+}
@@ -0,0 +1,191 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.spatial.CellList;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Calculates the gravitational acceleration using the particle-particle/particle-mesh (P<sup>3</sup>M) method. This keeps close
+ * encounters exact while costing close to O(N) per iteration.
+ * <p>
+ * The force is split smoothly at a scale r<sub>s</sub> of about a grid cell. The long range part, with potential
+ * -G m erf(r / 2r<sub>s</sub>) / r, varies slowly enough to be resolved by the {@link ParticleMeshSolver} grid. The short range
+ * remainder falls off like erfc(r / 2r<sub>s</sub>) and is summed directly over the pairs of bodies closer than a cut-off, which
+ * are found with a {@link CellList}.
+ *
+ * @author Ed
+ */
+public class P3mSolver extends ParticleMeshSolver
+{
+   /** The default split scale in grid cells. */
+   public static final double DefaultSplit = 1.25;
+
+   /** The default cut-off for the short range force in multiples of the split scale. */
+   public static final double DefaultCutoff = 6;
+
+   /** Coefficients of the Chebyshev fit used by {@link #erfc(double)}, lowest order first. */
+   private static final double[] ErfcCoefficients =
+   {
+      -1.26551223, 1.00002368, 0.37409196, 0.09678418, -0.18628806, 0.27886807, -1.13520398, 1.48851587, -0.82215223, 0.17087277
+   };
+
+   private final double split;
+
+   private final double cutoff;
+
+   private final CellList cells = new CellList();
+
+   private double[] x;
+
+   private double[] y;
+
+   private double[] mass;
+
+   private double splitRadius;
+
+   private double cutoffRadius;
+
+   /**
+    * Initializes a new P3mSolver object with the default grid size, split and cut-off.
+    *
+    * @param executor the executor over which the grid operations are partitioned.
+    */
+   public P3mSolver( final PartitionExecutor executor )
+   {
+      this( executor, DefaultGridSize, MassAssignment.CloudInCell, DefaultSplit, DefaultCutoff );
+   }
+
+   /**
+    * Initializes a new P3mSolver object.
+    *
+    * @param executor the executor over which the grid operations are partitioned.
+    * @param gridSize the number of grid points along each axis, which must be a power of two.
+    * @param assignment the scheme used to assign mass to the grid and to interpolate the acceleration back.
+    * @param split the scale at which the force is split between the grid and direct summation, in grid cells.
+    * @param cutoff the distance beyond which the short range force is ignored, in multiples of the split scale.
+    */
+   public P3mSolver( final PartitionExecutor executor,
+                     final int gridSize,
+                     final MassAssignment assignment,
+                     final double split,
+                     final double cutoff )
+   {
+      super( executor, gridSize, assignment );
+      if( ( split <= 0 ) || ( cutoff <= 0 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.split = split;
+      this.cutoff = cutoff;
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * This is the long range part of the potential, -erf(r / 2r<sub>s</sub>) / r.
+    */
+   @Override
+   protected double kernel( final double distance )
+   {
+      if( distance == 0 )
+      {
+         return -1 / ( this.split * Math.sqrt( Math.PI ) );
+      }
+      return -( 1 - erfc( distance / ( 2 * this.split ) ) ) / distance;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      super.prepare( x, y, mass, count );
+      this.x = x;
+      this.y = y;
+      this.mass = mass;
+      this.splitRadius = this.split * getCellSize();
+      this.cutoffRadius = this.cutoff * this.splitRadius;
+      if( this.cutoffRadius > 0 )
+      {
+         this.cells.build( x, y, count, this.cutoffRadius );
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      super.accelerate( extent, ax, ay );
+      if( this.cutoffRadius == 0 )
+      {
+         // There is no grid, because there are too few bodies or they are all in the same place, so nothing accelerates.
+         return;
+      }
+
+      final double cutoff2 = this.cutoffRadius * this.cutoffRadius;
+      final double scale = 1 / ( 2 * this.splitRadius );
+      final double gaussian = 1 / ( this.splitRadius * Math.sqrt( Math.PI ) );
+
+      for( final int index : extent )
+      {
+         final double bx = this.x[ index ];
+         final double by = this.y[ index ];
+         final int firstColumn = this.cells.column( bx - this.cutoffRadius );
+         final int lastColumn = this.cells.column( bx + this.cutoffRadius );
+         final int firstRow = this.cells.row( by - this.cutoffRadius );
+         final int lastRow = this.cells.row( by + this.cutoffRadius );
+
+         double sumX = 0;
+         double sumY = 0;
+         for( int row = firstRow; row <= lastRow; row++ )
+         {
+            for( int column = firstColumn; column <= lastColumn; column++ )
+            {
+               final int end = this.cells.cellEnd( column, row );
+               for( int k = this.cells.cellStart( column, row ); k < end; k++ )
+               {
+                  final int other = this.cells.body( k );
+                  final double dx = this.x[ other ] - bx;
+                  final double dy = this.y[ other ] - by;
+                  final double r2 = ( dx * dx ) + ( dy * dy );
+                  if( ( other == index ) || ( r2 == 0 ) || ( r2 >= cutoff2 ) )
+                  {
+                     continue;
+                  }
+
+                  // The remainder of the 1/r^2 force once the long range part has been taken away.
+                  final double r = Math.sqrt( r2 );
+                  final double shortRange = erfc( r * scale ) + ( r * gaussian * Math.exp( -r2 * scale * scale ) );
+                  final double a = ( Constants.G * this.mass[ other ] * shortRange ) / ( r2 * r );
+                  sumX += a * dx;
+                  sumY += a * dy;
+               }
+            }
+         }
+
+         ax[ index ] += sumX;
+         ay[ index ] += sumY;
+      }
+   }
+
+   /**
+    * Complementary error function with a fractional error of less than 1.2 x 10<sup>-7</sup>, from the Chebyshev fit in
+    * Numerical Recipes.
+    */
+   private static double erfc( final double x )
+   {
+      final double z = Math.abs( x );
+      final double t = 1 / ( 1 + ( 0.5 * z ) );
+      double polynomial = 0;
+      for( int i = ErfcCoefficients.length - 1; i >= 0; i-- )
+      {
+         polynomial = ErfcCoefficients[ i ] + ( t * polynomial );
+      }
+      final double result = t * Math.exp( ( -z * z ) + polynomial );
+      return x >= 0 ? result : 2 - result;
+   }
+}
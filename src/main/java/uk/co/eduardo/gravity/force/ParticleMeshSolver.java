@@ -0,0 +1,397 @@
+package uk.co.eduardo.gravity.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentResultTask;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Calculates the gravitational acceleration on a grid. This costs O(N + G<sup>2</sup> log G) per iteration for a G x G grid, which
+ * makes it well suited to dense, roughly uniform distributions of bodies.
+ * <p>
+ * Each iteration the mass of the bodies is deposited onto a grid covering all of them, the potential is found by convolving the
+ * density with the Green's function of the 1/r potential using a zero-padded FFT (so space is not periodic), and the acceleration
+ * at each grid point is found by central differences. The acceleration of each body is interpolated back from the grid using the
+ * same {@link MassAssignment} used for the deposit.
+ * <p>
+ * The resolution is limited to a few grid cells, so close encounters are softened.
+ *
+ * @author Ed
+ */
+public class ParticleMeshSolver implements ForceSolver
+{
+   /** The default number of grid points along each axis. */
+   public static final int DefaultGridSize = 256;
+
+   /** Empty grid points around the bodies so that the stencils never leave the grid. */
+   private static final int Border = 2;
+
+   /**
+    * The smallest span of the grid relative to the distance of the bodies from the origin, so that the cell size is never so small
+    * that the grid cannot resolve positions or the potential overflows.
+    */
+   private static final double MinimumSpan = 1e-9;
+
+   private final PartitionExecutor executor;
+
+   private final int gridSize;
+
+   private final MassAssignment assignment;
+
+   private final Fft fft;
+
+   private final double[] re;
+
+   private final double[] im;
+
+   private final double[] density;
+
+   private final double[] gradientX;
+
+   private final double[] gradientY;
+
+   private double[] kernelSpectrum;
+
+   private double originX;
+
+   private double originY;
+
+   private double cellSize;
+
+   private boolean degenerate;
+
+   private double[] x;
+
+   private double[] y;
+
+   /**
+    * Initializes a new ParticleMeshSolver object with the default grid size and cloud-in-cell assignment.
+    *
+    * @param executor the executor over which the grid operations are partitioned.
+    */
+   public ParticleMeshSolver( final PartitionExecutor executor )
+   {
+      this( executor, DefaultGridSize, MassAssignment.CloudInCell );
+   }
+
+   /**
+    * Initializes a new ParticleMeshSolver object.
+    *
+    * @param executor the executor over which the grid operations are partitioned.
+    * @param gridSize the number of grid points along each axis, which must be a power of two.
+    * @param assignment the scheme used to assign mass to the grid and to interpolate the acceleration back.
+    */
+   public ParticleMeshSolver( final PartitionExecutor executor, final int gridSize, final MassAssignment assignment )
+   {
+      if( ( gridSize < 8 ) || ( Integer.bitCount( gridSize ) != 1 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+
+      this.executor = executor;
+      this.gridSize = gridSize;
+      this.assignment = assignment;
+      this.fft = new Fft( 2 * gridSize );
+      this.re = new double[ 4 * gridSize * gridSize ];
+      this.im = new double[ 4 * gridSize * gridSize ];
+      this.density = new double[ gridSize * gridSize ];
+      this.gradientX = new double[ gridSize * gridSize ];
+      this.gradientY = new double[ gridSize * gridSize ];
+   }
+
+   /**
+    * Gets the number of grid points along each axis.
+    *
+    * @return the grid size.
+    */
+   public int getGridSize()
+   {
+      return this.gridSize;
+   }
+
+   /**
+    * Gets the distance between grid points in the current iteration.
+    *
+    * @return the cell size in metres, or zero if there is no grid because fewer than two bodies were given or they were all in
+    *         the same place, in which case no body accelerates.
+    */
+   protected final double getCellSize()
+   {
+      return this.cellSize;
+   }
+
+   /**
+    * Gets the executor over which work is partitioned.
+    *
+    * @return the executor.
+    */
+   protected final PartitionExecutor getExecutor()
+   {
+      return this.executor;
+   }
+
+   /**
+    * Gets the potential of a unit mass at the given distance for a grid with unit spacing, without the gravitational constant.
+    * This is -1/r, with the average over a cell used at the origin.
+    *
+    * @param distance the distance in grid cells.
+    * @return the potential.
+    */
+   protected double kernel( final double distance )
+   {
+      if( distance == 0 )
+      {
+         // The mean of 1/r over a unit square centred on the origin.
+         return -4 * Math.log( 1 + Math.sqrt( 2 ) );
+      }
+      return -1 / distance;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      this.x = x;
+      this.y = y;
+      this.cellSize = 0;
+      this.degenerate = true;
+      if( count < 2 )
+      {
+         return;
+      }
+
+      if( this.kernelSpectrum == null )
+      {
+         this.kernelSpectrum = transformKernel();
+      }
+
+      double minX = x[ 0 ];
+      double maxX = x[ 0 ];
+      double minY = y[ 0 ];
+      double maxY = y[ 0 ];
+      for( int i = 1; i < count; i++ )
+      {
+         minX = Math.min( minX, x[ i ] );
+         maxX = Math.max( maxX, x[ i ] );
+         minY = Math.min( minY, y[ i ] );
+         maxY = Math.max( maxY, y[ i ] );
+      }
+      final double span = Math.max( maxX - minX, maxY - minY );
+      if( span == 0 )
+      {
+         // All of the bodies are in the same place, so none of them accelerates any other.
+         return;
+      }
+      final double magnitude = Math.max( Math.max( Math.abs( minX ), Math.abs( maxX ) ), Math.max( Math.abs( minY ), Math.abs( maxY ) ) );
+      this.degenerate = false;
+      this.cellSize = Math.max( span, MinimumSpan * Math.max( magnitude, 1 ) ) / ( this.gridSize - 1 - ( 2 * Border ) );
+      this.originX = minX - ( Border * this.cellSize );
+      this.originY = minY - ( Border * this.cellSize );
+
+      deposit( mass, count );
+      solvePotential();
+      differentiate();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      if( this.degenerate )
+      {
+         Arrays.fill( ax, extent.getFirst(), extent.getLast() + 1, 0 );
+         Arrays.fill( ay, extent.getFirst(), extent.getLast() + 1, 0 );
+         return;
+      }
+
+      final int width = this.assignment.getWidth();
+      final double[] wx = new double[ width ];
+      final double[] wy = new double[ width ];
+
+      for( final int index : extent )
+      {
+         final int firstX = this.assignment.weights( ( this.x[ index ] - this.originX ) / this.cellSize, wx );
+         final int firstY = this.assignment.weights( ( this.y[ index ] - this.originY ) / this.cellSize, wy );
+
+         double sumX = 0;
+         double sumY = 0;
+         for( int j = 0; j < width; j++ )
+         {
+            final int row = ( firstY + j ) * this.gridSize;
+            for( int i = 0; i < width; i++ )
+            {
+               final double w = wx[ i ] * wy[ j ];
+               sumX += w * this.gradientX[ row + firstX + i ];
+               sumY += w * this.gradientY[ row + firstX + i ];
+            }
+         }
+         ax[ index ] = sumX;
+         ay[ index ] = sumY;
+      }
+   }
+
+   private void deposit( final double[] mass, final int count )
+   {
+      final int n = this.gridSize;
+
+      // Each partition deposits onto a private grid so that no locking is needed.
+      final Extent bodies = new Extent( 0, count - 1 );
+      final List< double[] > grids = this.executor.partitionResultTask( bodies, new ExtentResultTask< double[] >()
+      {
+         @Override
+         public double[] execute( final Extent extent )
+         {
+            return deposit( extent, mass );
+         }
+      } );
+
+      this.executor.partitionTask( new Extent( 0, n - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int row : extent )
+            {
+               for( int i = row * n; i < ( ( row + 1 ) * n ); i++ )
+               {
+                  double sum = 0;
+                  for( final double[] grid : grids )
+                  {
+                     sum += grid[ i ];
+                  }
+                  ParticleMeshSolver.this.density[ i ] = sum;
+               }
+            }
+         }
+      } );
+   }
+
+   private double[] deposit( final Extent extent, final double[] mass )
+   {
+      final int width = this.assignment.getWidth();
+      final double[] wx = new double[ width ];
+      final double[] wy = new double[ width ];
+      final double[] grid = new double[ this.gridSize * this.gridSize ];
+
+      for( final int index : extent )
+      {
+         final int firstX = this.assignment.weights( ( this.x[ index ] - this.originX ) / this.cellSize, wx );
+         final int firstY = this.assignment.weights( ( this.y[ index ] - this.originY ) / this.cellSize, wy );
+         for( int j = 0; j < width; j++ )
+         {
+            final int row = ( firstY + j ) * this.gridSize;
+            for( int i = 0; i < width; i++ )
+            {
+               grid[ row + firstX + i ] += mass[ index ] * wx[ i ] * wy[ j ];
+            }
+         }
+      }
+      return grid;
+   }
+
+   private void solvePotential()
+   {
+      final int n = this.gridSize;
+      final int padded = 2 * n;
+      final double scale = Constants.G / this.cellSize;
+
+      this.executor.partitionTask( new Extent( 0, padded - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final double[] real = ParticleMeshSolver.this.re;
+            final double[] imaginary = ParticleMeshSolver.this.im;
+            for( final int row : extent )
+            {
+               for( int column = 0; column < padded; column++ )
+               {
+                  final boolean inside = ( row < n ) && ( column < n );
+                  real[ ( row * padded ) + column ] = inside ? ParticleMeshSolver.this.density[ ( row * n ) + column ] : 0;
+                  imaginary[ ( row * padded ) + column ] = 0;
+               }
+            }
+         }
+      } );
+
+      this.fft.transform2D( this.re, this.im, false, this.executor );
+
+      this.executor.partitionTask( new Extent( 0, padded - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final double[] spectrum = ParticleMeshSolver.this.kernelSpectrum;
+            for( final int row : extent )
+            {
+               for( int i = row * padded; i < ( ( row + 1 ) * padded ); i++ )
+               {
+                  ParticleMeshSolver.this.re[ i ] *= spectrum[ i ] * scale;
+                  ParticleMeshSolver.this.im[ i ] *= spectrum[ i ] * scale;
+               }
+            }
+         }
+      } );
+
+      this.fft.transform2D( this.re, this.im, true, this.executor );
+   }
+
+   private void differentiate()
+   {
+      final int n = this.gridSize;
+      final int padded = 2 * n;
+      final double factor = -1 / ( 2 * this.cellSize );
+
+      // The potential is in the top left quarter of the padded grid. The acceleration is minus its gradient.
+      this.executor.partitionTask( new Extent( 0, n - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final double[] potential = ParticleMeshSolver.this.re;
+            final double[] gradientX = ParticleMeshSolver.this.gradientX;
+            final double[] gradientY = ParticleMeshSolver.this.gradientY;
+            for( final int row : extent )
+            {
+               final int up = Math.min( n - 1, row + 1 ) * padded;
+               final int down = Math.max( 0, row - 1 ) * padded;
+               for( int column = 0; column < n; column++ )
+               {
+                  final int right = ( row * padded ) + Math.min( n - 1, column + 1 );
+                  final int left = ( row * padded ) + Math.max( 0, column - 1 );
+                  gradientX[ ( row * n ) + column ] = factor * ( potential[ right ] - potential[ left ] );
+                  gradientY[ ( row * n ) + column ] = factor * ( potential[ up + column ] - potential[ down + column ] );
+               }
+            }
+         }
+      } );
+   }
+
+   private double[] transformKernel()
+   {
+      final int padded = 2 * this.gridSize;
+      final double[] kernelRe = new double[ padded * padded ];
+      final double[] kernelIm = new double[ padded * padded ];
+      for( int row = 0; row < padded; row++ )
+      {
+         final int dy = row < this.gridSize ? row : row - padded;
+         for( int column = 0; column < padded; column++ )
+         {
+            final int dx = column < this.gridSize ? column : column - padded;
+            kernelRe[ ( row * padded ) + column ] = kernel( Math.sqrt( ( dx * dx ) + ( dy * dy ) ) );
+         }
+      }
+
+      // The kernel is even in both axes, so its transform is real.
+      this.fft.transform2D( kernelRe, kernelIm, false, this.executor );
+      return kernelRe;
+   }
+}
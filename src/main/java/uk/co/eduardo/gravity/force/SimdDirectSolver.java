@@ -0,0 +1,69 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates the exact gravitational acceleration by summing over every other body, using SIMD instructions where the JVM
+ * supports them.
+ * <p>
+ * The vectorised kernel uses the incubating Vector API, so it is built from a separate source set when compiling on Java 17 or
+ * later and is only usable when the JVM is started with <code>--add-modules jdk.incubator.vector</code>. If it cannot be loaded
+ * this falls back to the scalar {@link TiledDirectSolver}.
+ *
+ * @author Ed
+ */
+public class SimdDirectSolver implements ForceSolver
+{
+   private static final String VectorKernel = "uk.co.eduardo.gravity.force.VectorDirectSolver"; //$NON-NLS-1$
+
+   private final ForceSolver kernel;
+
+   private final boolean vectorised;
+
+   /**
+    * Initializes a new SimdDirectSolver object.
+    */
+   public SimdDirectSolver()
+   {
+      ForceSolver vector = null;
+      try
+      {
+         vector = (ForceSolver) Class.forName( VectorKernel ).getDeclaredConstructor().newInstance();
+      }
+      catch( final ReflectiveOperationException | LinkageError e )
+      {
+         // Either the kernel was not compiled or the incubator module is missing.
+      }
+
+      this.vectorised = vector != null;
+      this.kernel = this.vectorised ? vector : new TiledDirectSolver();
+   }
+
+   /**
+    * Gets whether the SIMD kernel is in use.
+    *
+    * @return <code>true</code> if the SIMD kernel is in use, <code>false</code> if this has fallen back to the scalar kernel.
+    */
+   public boolean isVectorised()
+   {
+      return this.vectorised;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      this.kernel.prepare( x, y, mass, count );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      this.kernel.accelerate( extent, ax, ay );
+   }
+}
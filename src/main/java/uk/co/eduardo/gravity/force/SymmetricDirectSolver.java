@@ -0,0 +1,186 @@
+package uk.co.eduardo.gravity.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Calculates the exact gravitational acceleration by visiting every unordered pair of bodies once and applying equal and opposite
+ * contributions to both, which halves the work of {@link DirectSolver}.
+ * <p>
+ * All of the work is done in {@link #prepare(double[], double[], double[], int) prepare}. The rows of the upper triangle of pairs
+ * are split into bands holding roughly the same number of pairs, one per partition of the executor. Each band accumulates into its
+ * own buffers so that no locking is needed, and the buffers are then summed in parallel. {@link #accelerate(Extent, double[],
+ * double[]) accelerate} only copies out the result.
+ *
+ * @author Ed
+ */
+public class SymmetricDirectSolver implements ForceSolver
+{
+   private final PartitionExecutor executor;
+
+   private double[][] bufferX = new double[ 0 ][];
+
+   private double[][] bufferY = new double[ 0 ][];
+
+   private double[] ax = new double[ 0 ];
+
+   private double[] ay = new double[ 0 ];
+
+   /**
+    * Initializes a new SymmetricDirectSolver object.
+    *
+    * @param executor the executor over which the pairs are partitioned.
+    */
+   public SymmetricDirectSolver( final PartitionExecutor executor )
+   {
+      this.executor = executor;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      final Extent[] bands = partitionPairs( count, this.executor.getPartitionCount() );
+      ensureCapacity( bands.length, count );
+
+      final List< Runnable > tasks = new ArrayList<>( bands.length );
+      for( int i = 0; i < bands.length; i++ )
+      {
+         final Extent band = bands[ i ];
+         final double[] sumX = this.bufferX[ i ];
+         final double[] sumY = this.bufferY[ i ];
+         tasks.add( new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               accumulate( band, x, y, mass, count, sumX, sumY );
+            }
+         } );
+      }
+      this.executor.executeTasks( tasks );
+
+      final int bandCount = bands.length;
+      this.executor.partitionTask( new Extent( 0, count - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int index : extent )
+            {
+               double sumX = 0;
+               double sumY = 0;
+               for( int band = 0; band < bandCount; band++ )
+               {
+                  sumX += SymmetricDirectSolver.this.bufferX[ band ][ index ];
+                  sumY += SymmetricDirectSolver.this.bufferY[ band ][ index ];
+               }
+               SymmetricDirectSolver.this.ax[ index ] = sumX;
+               SymmetricDirectSolver.this.ay[ index ] = sumY;
+            }
+         }
+      } );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      for( final int index : extent )
+      {
+         ax[ index ] = this.ax[ index ];
+         ay[ index ] = this.ay[ index ];
+      }
+   }
+
+   private static void accumulate( final Extent band,
+                                   final double[] x,
+                                   final double[] y,
+                                   final double[] mass,
+                                   final int count,
+                                   final double[] sumX,
+                                   final double[] sumY )
+   {
+      Arrays.fill( sumX, 0, count, 0 );
+      Arrays.fill( sumY, 0, count, 0 );
+
+      for( final int i : band )
+      {
+         final double bx = x[ i ];
+         final double by = y[ i ];
+         final double bodyMass = mass[ i ];
+         double rowX = 0;
+         double rowY = 0;
+         for( int j = i + 1; j < count; j++ )
+         {
+            final double dx = x[ j ] - bx;
+            final double dy = y[ j ] - by;
+            final double r2 = ( dx * dx ) + ( dy * dy );
+            if( r2 > 0 )
+            {
+               // G / r^3 is shared by the pair. Each body is pulled towards the other in proportion to the other's mass.
+               final double g = Constants.G / ( r2 * Math.sqrt( r2 ) );
+               final double ai = g * mass[ j ];
+               final double aj = g * bodyMass;
+               rowX += ai * dx;
+               rowY += ai * dy;
+               sumX[ j ] -= aj * dx;
+               sumY[ j ] -= aj * dy;
+            }
+         }
+         sumX[ i ] += rowX;
+         sumY[ i ] += rowY;
+      }
+   }
+
+   /**
+    * Splits the rows of the upper triangle of pairs into bands holding roughly the same number of pairs. Row i holds the
+    * count - 1 - i pairs (i, j) with j &gt; i.
+    */
+   private static Extent[] partitionPairs( final int count, final int partitions )
+   {
+      final long total = ( (long) count * ( count - 1 ) ) / 2;
+      final int bandCount = Math.max( 1, Math.min( partitions, count ) );
+      final Extent[] bands = new Extent[ bandCount ];
+
+      int first = 0;
+      long pairs = 0;
+      for( int band = 0; band < bandCount; band++ )
+      {
+         final long target = ( total * ( band + 1 ) ) / bandCount;
+         int last = first - 1;
+         while( ( last < ( count - 1 ) ) && ( ( band == ( bandCount - 1 ) ) || ( pairs < target ) ) )
+         {
+            last++;
+            pairs += count - 1 - last;
+         }
+         bands[ band ] = new Extent( first, last );
+         first = last + 1;
+      }
+      return bands;
+   }
+
+   private void ensureCapacity( final int bands, final int count )
+   {
+      if( this.ax.length < count )
+      {
+         this.ax = new double[ count ];
+         this.ay = new double[ count ];
+      }
+      if( ( this.bufferX.length < bands ) || ( ( bands > 0 ) && ( this.bufferX[ 0 ].length < count ) ) )
+      {
+         this.bufferX = new double[ bands ][ count ];
+         this.bufferY = new double[ bands ][ count ];
+      }
+   }
+}
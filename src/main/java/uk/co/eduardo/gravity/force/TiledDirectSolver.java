@@ -0,0 +1,169 @@
+package uk.co.eduardo.gravity.force;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates the exact gravitational acceleration by summing over every other body, blocked so that it is limited by arithmetic
+ * rather than by memory bandwidth.
+ * <p>
+ * The sources are copied into contiguous arrays of positions and G-scaled masses. Each extent is processed a block of targets at a
+ * time, and each block sweeps across the sources a tile at a time, so a tile is loaded once per block rather than once per body.
+ * The defaults keep a source tile within a typical 32 KB level one cache.
+ *
+ * @author Ed
+ */
+public class TiledDirectSolver implements ForceSolver
+{
+   /** The default number of targets in a block. */
+   public static final int DefaultTargetTile = 64;
+
+   /** The default number of sources in a tile. */
+   public static final int DefaultSourceTile = 512;
+
+   private final int targetTile;
+
+   private final int sourceTile;
+
+   private double[] x = new double[ 0 ];
+
+   private double[] y = new double[ 0 ];
+
+   private double[] gm = new double[ 0 ];
+
+   private int count;
+
+   /**
+    * Initializes a new TiledDirectSolver object with the default tile sizes.
+    */
+   public TiledDirectSolver()
+   {
+      this( DefaultTargetTile, DefaultSourceTile );
+   }
+
+   /**
+    * Initializes a new TiledDirectSolver object.
+    *
+    * @param targetTile the number of targets in a block.
+    * @param sourceTile the number of sources in a tile.
+    */
+   public TiledDirectSolver( final int targetTile, final int sourceTile )
+   {
+      if( ( targetTile < 1 ) || ( sourceTile < 1 ) )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.targetTile = targetTile;
+      this.sourceTile = sourceTile;
+   }
+
+   /**
+    * Gets the number of targets in a block.
+    *
+    * @return the target tile size.
+    */
+   public int getTargetTile()
+   {
+      return this.targetTile;
+   }
+
+   /**
+    * Gets the number of sources in a tile.
+    *
+    * @return the source tile size.
+    */
+   public int getSourceTile()
+   {
+      return this.sourceTile;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      if( this.x.length < count )
+      {
+         this.x = new double[ count ];
+         this.y = new double[ count ];
+         this.gm = new double[ count ];
+      }
+      System.arraycopy( x, 0, this.x, 0, count );
+      System.arraycopy( y, 0, this.y, 0, count );
+      for( int i = 0; i < count; i++ )
+      {
+         this.gm[ i ] = Constants.G * mass[ i ];
+      }
+      this.count = count;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      final double[] sumX = new double[ this.targetTile ];
+      final double[] sumY = new double[ this.targetTile ];
+
+      for( int first = extent.getFirst(); first <= extent.getLast(); first += this.targetTile )
+      {
+         final int targets = Math.min( this.targetTile, ( extent.getLast() - first ) + 1 );
+         for( int t = 0; t < targets; t++ )
+         {
+            sumX[ t ] = 0;
+            sumY[ t ] = 0;
+         }
+
+         for( int tile = 0; tile < this.count; tile += this.sourceTile )
+         {
+            accumulate( first, targets, tile, Math.min( this.count, tile + this.sourceTile ), sumX, sumY );
+         }
+
+         for( int t = 0; t < targets; t++ )
+         {
+            ax[ first + t ] = sumX[ t ];
+            ay[ first + t ] = sumY[ t ];
+         }
+      }
+   }
+
+   /**
+    * Accumulates the acceleration of a block of targets due to a tile of sources. A body is its own source only at zero distance,
+    * so skipping coincident points is enough to exclude it.
+    */
+   private void accumulate( final int first,
+                            final int targets,
+                            final int tileStart,
+                            final int tileEnd,
+                            final double[] sumX,
+                            final double[] sumY )
+   {
+      final double[] sourceX = this.x;
+      final double[] sourceY = this.y;
+      final double[] sourceMass = this.gm;
+
+      for( int t = 0; t < targets; t++ )
+      {
+         final double bx = sourceX[ first + t ];
+         final double by = sourceY[ first + t ];
+         double accelerationX = 0;
+         double accelerationY = 0;
+         for( int other = tileStart; other < tileEnd; other++ )
+         {
+            final double dx = sourceX[ other ] - bx;
+            final double dy = sourceY[ other ] - by;
+            final double r2 = ( dx * dx ) + ( dy * dy );
+            if( r2 > 0 )
+            {
+               final double a = sourceMass[ other ] / ( r2 * Math.sqrt( r2 ) );
+               accelerationX += a * dx;
+               accelerationY += a * dy;
+            }
+         }
+         sumX[ t ] += accelerationX;
+         sumY[ t ] += accelerationY;
+      }
+   }
+}
@@ -7,6 +7,9 @@ package uk.co.eduardo.gravity.math;
  */
 public class Body
 {
+   /** The identifier of the body, which stays the same however the body changes or moves within a list. */
+   public final long id;
+
    /** The mass of the object in kilograms. */
    public final double mass;
 
@@ -25,13 +28,15 @@ public class Body
    /**
     * Initializes a new Body object.
     *
+    * @param id the identifier of the body.
     * @param mass the mass of the object in kilograms.
     * @param density the density of the body in kilograms/metre<sup>2</sup>
     * @param position the position of the body in space in metres.
     * @param velocity the velocity of the object in metres.
     */
-   public Body( final double mass, final double density, final Vector2 position, final Vector2 velocity )
+   public Body( final long id, final double mass, final double density, final Vector2 position, final Vector2 velocity )
    {
+      this.id = id;
       this.mass = mass;
       this.density = density;
       this.radius = getRadius( mass, density );
@@ -51,8 +56,8 @@ public class Body
    {
       final Vector2 acceleration = force.div( this.mass );
       final Vector2 newVelocity = this.velocity.add( acceleration.mul( seconds ) );
-      final Vector2 newPosition = this.position.add( newVelocity );
-      return new Body( this.mass, this.density, newPosition, newVelocity );
+      final Vector2 newPosition = this.position.add( newVelocity.mul( seconds ) );
+      return new Body( this.id, this.mass, this.density, newPosition, newVelocity );
    }
 
    /**
@@ -9,6 +9,9 @@ import uk.co.eduardo.gravity.math.Constants;
  */
 public class Body
 {
+   /** The identifier of the body, which stays the same however the body changes or moves within a list. */
+   public final long id;
+
    /** The mass of the object in kilograms. */
    public double mass;
 
@@ -27,13 +30,15 @@ public class Body
    /**
     * Initializes a new Body object.
     *
+    * @param id the identifier of the body.
     * @param mass the mass of the object in kilograms.
     * @param density the density of the body in kilograms/metre<sup>2</sup>
     * @param position the position of the body in space in metres.
     * @param velocity the velocity of the object in metres.
     */
-   public Body( final double mass, final double density, final Vector position, final Vector velocity )
+   public Body( final long id, final double mass, final double density, final Vector position, final Vector velocity )
    {
+      this.id = id;
       this.mass = mass;
       this.density = density;
       this.radius = getRadius( mass, density );
@@ -53,7 +58,7 @@ public class Body
    {
       final Vector acceleration = new Vector( force ).div( this.mass );
       this.velocity.add( acceleration.mul( seconds ) );
-      this.position.add( this.velocity );
+      this.position.add( new Vector( this.velocity ).mul( seconds ) );
       return this;
    }
 
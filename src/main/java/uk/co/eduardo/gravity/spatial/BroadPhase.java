@@ -0,0 +1,42 @@
+package uk.co.eduardo.gravity.spatial;
+
+/**
+ * The broad phase of collision detection between circles, which finds the few bodies that might overlap a given body so that the
+ * narrow phase does not have to compare it with every other body.
+ * <p>
+ * Bodies are referred to by their index in the list from which the broad phase was last built. A query is given the reach of a
+ * body, which is how far beyond the radius of another body the two might overlap, so that the broad phase can allow for the radius
+ * of each body it finds. Some bodies, such as a central star, may be too large for a broad phase to find efficiently by range, in
+ * which case they are always returned as candidates instead.
+ *
+ * @author Ed
+ */
+public interface BroadPhase
+{
+   /**
+    * Gets the radius of a body when the broad phase was built. A query allows for this radius, so if a body found by range grows
+    * the caller must add the growth to the reach of its queries.
+    *
+    * @param body the index of the body.
+    * @return the radius.
+    */
+   double getRadius( int body );
+
+   /**
+    * Gets whether a body is found by range, rather than always being a candidate because it is so large.
+    *
+    * @param body the index of the body.
+    * @return <code>true</code> if the body is found by range, or <code>false</code> if it is always a candidate.
+    */
+   boolean contains( int body );
+
+   /**
+    * Finds the bodies that might overlap a body, which are the bodies found by range that are within the reach plus their own
+    * radius of it and every body that is always a candidate. The body itself is excluded.
+    *
+    * @param body the index of the body.
+    * @param reach the distance beyond the radius of another body within which it might overlap the body.
+    * @param candidates the list to which the candidates are added, in ascending order. It is cleared first.
+    */
+   void query( int body, double reach, IntList candidates );
+}
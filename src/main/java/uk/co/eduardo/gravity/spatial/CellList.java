@@ -0,0 +1,201 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of square cells over a set of points, used to find the points near a given location in O(1).
+ * <p>
+ * The points are counting sorted by cell, so the points in each cell are contiguous in {@link #body(int)}. The grid only covers
+ * the bounding box of the points, and the cell size is increased if necessary so that there are never more than a few cells per
+ * point. A query with a larger radius than the cell size simply visits more cells.
+ * <p>
+ * Building the list is not thread-safe, but once built any number of threads may query it at the same time.
+ *
+ * @author Ed
+ */
+public class CellList
+{
+   private static final int CellsPerPoint = 2;
+
+   private double left;
+
+   private double bottom;
+
+   private double cellSize;
+
+   private int columns;
+
+   private int rows;
+
+   private int[] start = new int[ 1 ];
+
+   private int[] order = new int[ 0 ];
+
+   private int[] cellOf = new int[ 0 ];
+
+   /**
+    * Builds the list from scratch.
+    *
+    * @param x the x coordinates of the points.
+    * @param y the y coordinates of the points.
+    * @param count the number of points. Only the first <code>count</code> elements of each array are used.
+    * @param minimumCellSize the smallest allowed size of a cell.
+    */
+   public void build( final double[] x, final double[] y, final int count, final double minimumCellSize )
+   {
+      double minX = 0;
+      double maxX = 0;
+      double minY = 0;
+      double maxY = 0;
+      if( count > 0 )
+      {
+         minX = maxX = x[ 0 ];
+         minY = maxY = y[ 0 ];
+      }
+      for( int i = 1; i < count; i++ )
+      {
+         minX = Math.min( minX, x[ i ] );
+         maxX = Math.max( maxX, x[ i ] );
+         minY = Math.min( minY, y[ i ] );
+         maxY = Math.max( maxY, y[ i ] );
+      }
+
+      // Never use more than a few cells per point, however small the requested cells are.
+      final double width = maxX - minX;
+      final double height = maxY - minY;
+      final double cells = Math.max( 1, (double) CellsPerPoint * count );
+      this.cellSize = Math.max( minimumCellSize, Math.sqrt( ( width * height ) / cells ) );
+      this.cellSize = Math.max( this.cellSize, Math.max( width, height ) / cells );
+      this.cellSize = Math.max( this.cellSize, Double.MIN_NORMAL );
+      this.left = minX;
+      this.bottom = minY;
+      this.columns = (int) ( width / this.cellSize ) + 1;
+      this.rows = (int) ( height / this.cellSize ) + 1;
+
+      final int cellCount = this.columns * this.rows;
+      if( this.start.length < ( cellCount + 1 ) )
+      {
+         this.start = new int[ cellCount + 1 ];
+      }
+      else
+      {
+         Arrays.fill( this.start, 0, cellCount + 1, 0 );
+      }
+      if( this.order.length < count )
+      {
+         this.order = new int[ count ];
+         this.cellOf = new int[ count ];
+      }
+
+      for( int i = 0; i < count; i++ )
+      {
+         this.cellOf[ i ] = ( row( y[ i ] ) * this.columns ) + column( x[ i ] );
+         this.start[ this.cellOf[ i ] + 1 ]++;
+      }
+      for( int cell = 0; cell < cellCount; cell++ )
+      {
+         this.start[ cell + 1 ] += this.start[ cell ];
+      }
+
+      // Fill each cell from the back so that the points within a cell stay in index order. This leaves start[ c + 1 ] at the
+      // beginning of cell c, so everything is then shifted down by one.
+      for( int i = count - 1; i >= 0; i-- )
+      {
+         this.order[ --this.start[ this.cellOf[ i ] + 1 ] ] = i;
+      }
+      System.arraycopy( this.start, 1, this.start, 0, cellCount );
+      this.start[ cellCount ] = count;
+   }
+
+   /**
+    * Gets the size of each cell.
+    *
+    * @return the cell size.
+    */
+   public double getCellSize()
+   {
+      return this.cellSize;
+   }
+
+   /**
+    * Gets the number of columns of cells.
+    *
+    * @return the number of columns.
+    */
+   public int getColumns()
+   {
+      return this.columns;
+   }
+
+   /**
+    * Gets the number of rows of cells.
+    *
+    * @return the number of rows.
+    */
+   public int getRows()
+   {
+      return this.rows;
+   }
+
+   /**
+    * Gets the column containing the x coordinate, clamped to the grid.
+    *
+    * @param x the x coordinate.
+    * @return the column.
+    */
+   public int column( final double x )
+   {
+      return clamp( (int) Math.floor( ( x - this.left ) / this.cellSize ), this.columns );
+   }
+
+   /**
+    * Gets the row containing the y coordinate, clamped to the grid.
+    *
+    * @param y the y coordinate.
+    * @return the row.
+    */
+   public int row( final double y )
+   {
+      return clamp( (int) Math.floor( ( y - this.bottom ) / this.cellSize ), this.rows );
+   }
+
+   /**
+    * Gets the position in {@link #body(int)} of the first point in a cell.
+    *
+    * @param column the column of the cell.
+    * @param row the row of the cell.
+    * @return the position of the first point.
+    */
+   public int cellStart( final int column, final int row )
+   {
+      return this.start[ ( row * this.columns ) + column ];
+   }
+
+   /**
+    * Gets the position in {@link #body(int)} after the last point in a cell.
+    *
+    * @param column the column of the cell.
+    * @param row the row of the cell.
+    * @return the position after the last point.
+    */
+   public int cellEnd( final int column, final int row )
+   {
+      return this.start[ ( row * this.columns ) + column + 1 ];
+   }
+
+   /**
+    * Gets a point by its position in cell order.
+    *
+    * @param position the position in cell order.
+    * @return the index of the point.
+    */
+   public int body( final int position )
+   {
+      return this.order[ position ];
+   }
+
+   private static int clamp( final int value, final int size )
+   {
+      return Math.max( 0, Math.min( size - 1, value ) );
+   }
+}
@@ -0,0 +1,133 @@
+package uk.co.eduardo.gravity.spatial;
+
+/**
+ * Broad phase for collisions between circles, which finds the few bodies that might overlap a given body without comparing it to
+ * every other body.
+ * <p>
+ * The bodies are binned into a {@link CellList} with a cell size of a few times the mean radius, so a query only visits the cells
+ * within its range. Bodies that are much larger than a cell, such as a central star, would force every query to cover a huge
+ * range, so they are kept out of the grid and are always returned as candidates instead.
+ * <p>
+ * Candidates are returned in ascending index order, so that a broad phase followed by a narrow phase visits the overlapping pairs
+ * in exactly the same order as comparing against every body in turn.
+ *
+ * @author Ed
+ */
+public class CollisionGrid implements BroadPhase
+{
+   private static final double CellsPerRadius = 4;
+
+   private final CellList cells = new CellList();
+
+   private final IntList large = new IntList();
+
+   private boolean[] isLarge = new boolean[ 0 ];
+
+   private double[] x;
+
+   private double[] y;
+
+   private double[] radius;
+
+   private double maxRadius;
+
+   /**
+    * Builds the grid. The grid keeps a reference to the positions and radii, which must not be modified while it is in use.
+    *
+    * @param x the x coordinates of the bodies.
+    * @param y the y coordinates of the bodies.
+    * @param radius the radii of the bodies.
+    * @param count the number of bodies. Only the first <code>count</code> elements of each array are used.
+    */
+   public void build( final double[] x, final double[] y, final double[] radius, final int count )
+   {
+      this.x = x;
+      this.y = y;
+      this.radius = radius;
+
+      double sum = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         sum += radius[ i ];
+      }
+      final double cellSize = count > 0 ? ( CellsPerRadius * sum ) / count : 0;
+
+      if( this.isLarge.length < count )
+      {
+         this.isLarge = new boolean[ count ];
+      }
+      this.large.clear();
+      this.maxRadius = 0;
+      for( int i = 0; i < count; i++ )
+      {
+         this.isLarge[ i ] = radius[ i ] > cellSize;
+         if( this.isLarge[ i ] )
+         {
+            this.large.add( i );
+         }
+         else
+         {
+            this.maxRadius = Math.max( this.maxRadius, radius[ i ] );
+         }
+      }
+
+      this.cells.build( x, y, count, cellSize );
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.radius[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains( final int body )
+   {
+      return !this.isLarge[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void query( final int body, final double reach, final IntList candidates )
+   {
+      candidates.clear();
+
+      final double range = reach + this.maxRadius;
+      final double bx = this.x[ body ];
+      final double by = this.y[ body ];
+      final int lastColumn = this.cells.column( bx + range );
+      final int lastRow = this.cells.row( by + range );
+      for( int row = this.cells.row( by - range ); row <= lastRow; row++ )
+      {
+         for( int column = this.cells.column( bx - range ); column <= lastColumn; column++ )
+         {
+            final int end = this.cells.cellEnd( column, row );
+            for( int k = this.cells.cellStart( column, row ); k < end; k++ )
+            {
+               final int other = this.cells.body( k );
+               if( ( other != body ) && !this.isLarge[ other ] )
+               {
+                  candidates.add( other );
+               }
+            }
+         }
+      }
+
+      for( int i = 0; i < this.large.size(); i++ )
+      {
+         if( this.large.get( i ) != body )
+         {
+            candidates.add( this.large.get( i ) );
+         }
+      }
+      candidates.sort();
+   }
+}
@@ -0,0 +1,166 @@
+package uk.co.eduardo.gravity.spatial;
+
+/**
+ * Broad phase for collisions between circles whose radii span orders of magnitude, such as a central star among many small
+ * bodies.
+ * <p>
+ * A single grid has to choose one cell size. If it suits the small bodies, a large body covers a huge number of cells, and if it
+ * suits the large bodies, every cell holds a huge number of small bodies. This grid has a number of levels instead, each with
+ * cells twice the size of the level below, and each body is binned into the level whose cells match its radius. A query visits
+ * every level, but only allows for the largest radius on that level, so it covers a few cells on each of them. The pairs between
+ * levels are found from both sides, as the small body finds the large one on its level and the large body finds the small one on
+ * its level. Every body is found by range, however large, so the time taken stays linear in the number of bodies.
+ * <p>
+ * Candidates are returned in ascending index order, so that a broad phase followed by a narrow phase visits the overlapping pairs
+ * in exactly the same order as comparing against every body in turn.
+ *
+ * @author Ed
+ */
+public class HierarchicalGrid implements BroadPhase
+{
+   private static final double CellsPerRadius = 2;
+
+   private CellList[] cells = new CellList[ 0 ];
+
+   private int[][] members = new int[ 0 ][];
+
+   private double[] levelRadius = new double[ 0 ];
+
+   private double[] x;
+
+   private double[] y;
+
+   private double[] radius;
+
+   /**
+    * Builds the grid. The grid keeps a reference to the positions and radii, which must not be modified while it is in use.
+    *
+    * @param x the x coordinates of the bodies.
+    * @param y the y coordinates of the bodies.
+    * @param radius the radii of the bodies.
+    * @param count the number of bodies. Only the first <code>count</code> elements of each array are used.
+    */
+   public void build( final double[] x, final double[] y, final double[] radius, final int count )
+   {
+      this.x = x;
+      this.y = y;
+      this.radius = radius;
+
+      // The smallest radius sets the size of the cells on the lowest level.
+      double smallest = Double.POSITIVE_INFINITY;
+      for( int i = 0; i < count; i++ )
+      {
+         if( radius[ i ] > 0 )
+         {
+            smallest = Math.min( smallest, radius[ i ] );
+         }
+      }
+
+      final int[] level = new int[ count ];
+      int levels = count > 0 ? 1 : 0;
+      for( int i = 0; i < count; i++ )
+      {
+         double bound = smallest;
+         while( radius[ i ] > bound )
+         {
+            bound *= 2;
+            level[ i ]++;
+         }
+         levels = Math.max( levels, level[ i ] + 1 );
+      }
+
+      final int[] size = new int[ levels ];
+      this.levelRadius = new double[ levels ];
+      for( int i = 0; i < count; i++ )
+      {
+         size[ level[ i ] ]++;
+         this.levelRadius[ level[ i ] ] = Math.max( this.levelRadius[ level[ i ] ], radius[ i ] );
+      }
+
+      this.cells = new CellList[ levels ];
+      this.members = new int[ levels ][];
+      final double[][] levelX = new double[ levels ][];
+      final double[][] levelY = new double[ levels ][];
+      for( int l = 0; l < levels; l++ )
+      {
+         this.members[ l ] = new int[ size[ l ] ];
+         levelX[ l ] = new double[ size[ l ] ];
+         levelY[ l ] = new double[ size[ l ] ];
+         size[ l ] = 0;
+      }
+      for( int i = 0; i < count; i++ )
+      {
+         final int l = level[ i ];
+         this.members[ l ][ size[ l ] ] = i;
+         levelX[ l ][ size[ l ] ] = x[ i ];
+         levelY[ l ][ size[ l ] ] = y[ i ];
+         size[ l ]++;
+      }
+      for( int l = 0; l < levels; l++ )
+      {
+         if( size[ l ] > 0 )
+         {
+            this.cells[ l ] = new CellList();
+            this.cells[ l ].build( levelX[ l ], levelY[ l ], size[ l ], CellsPerRadius * this.levelRadius[ l ] );
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public double getRadius( final int body )
+   {
+      return this.radius[ body ];
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains( final int body )
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void query( final int body, final double reach, final IntList candidates )
+   {
+      candidates.clear();
+
+      final double bx = this.x[ body ];
+      final double by = this.y[ body ];
+      for( int l = 0; l < this.cells.length; l++ )
+      {
+         final CellList level = this.cells[ l ];
+         if( level == null )
+         {
+            continue;
+         }
+
+         final double range = reach + this.levelRadius[ l ];
+         final int lastColumn = level.column( bx + range );
+         final int lastRow = level.row( by + range );
+         for( int row = level.row( by - range ); row <= lastRow; row++ )
+         {
+            for( int column = level.column( bx - range ); column <= lastColumn; column++ )
+            {
+               final int end = level.cellEnd( column, row );
+               for( int k = level.cellStart( column, row ); k < end; k++ )
+               {
+                  final int other = this.members[ l ][ level.body( k ) ];
+                  if( other != body )
+                  {
+                     candidates.add( other );
+                  }
+               }
+            }
+         }
+      }
+      candidates.sort();
+   }
+}
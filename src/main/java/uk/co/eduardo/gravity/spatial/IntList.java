@@ -0,0 +1,85 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used for scratch lists that are cleared and refilled many times so that nothing is boxed or
+ * reallocated once the list has grown to its working size.
+ *
+ * @author Ed
+ */
+public class IntList
+{
+   private int[] values;
+
+   private int size;
+
+   /**
+    * Initializes a new IntList object.
+    */
+   public IntList()
+   {
+      this( 16 );
+   }
+
+   /**
+    * Initializes a new IntList object.
+    *
+    * @param capacity the initial capacity.
+    */
+   public IntList( final int capacity )
+   {
+      this.values = new int[ Math.max( 1, capacity ) ];
+   }
+
+   /**
+    * Gets the number of values in the list.
+    *
+    * @return the size.
+    */
+   public int size()
+   {
+      return this.size;
+   }
+
+   /**
+    * Gets a value.
+    *
+    * @param index the index of the value.
+    * @return the value.
+    */
+   public int get( final int index )
+   {
+      return this.values[ index ];
+   }
+
+   /**
+    * Adds a value to the end of the list.
+    *
+    * @param value the value to add.
+    */
+   public void add( final int value )
+   {
+      if( this.size == this.values.length )
+      {
+         this.values = Arrays.copyOf( this.values, this.size * 2 );
+      }
+      this.values[ this.size++ ] = value;
+   }
+
+   /**
+    * Sorts the values into ascending order.
+    */
+   public void sort()
+   {
+      Arrays.sort( this.values, 0, this.size );
+   }
+
+   /**
+    * Removes every value from the list without releasing its storage.
+    */
+   public void clear()
+   {
+      this.size = 0;
+   }
+}
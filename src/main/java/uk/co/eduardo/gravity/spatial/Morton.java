@@ -0,0 +1,78 @@
+package uk.co.eduardo.gravity.spatial;
+
+/**
+ * Morton (Z-order) keys, which interleave the bits of two coordinates so that sorting by key groups points that are close together
+ * in space.
+ * <p>
+ * Each coordinate is quantized to 32 bits, giving a 64 bit key. The x bit comes before the y bit at each level, so the two bits at
+ * the top of the key give the quadrant of the root cell as numbered by {@link QuadTree}, the next two bits the quadrant within that
+ * quadrant, and so on.
+ *
+ * @author Ed
+ */
+public final class Morton
+{
+   /** The number of bits per coordinate. */
+   public static final int Bits = 32;
+
+   private static final double Scale = 1L << Bits;
+
+   private static final long MaxCoordinate = ( 1L << Bits ) - 1;
+
+   private Morton()
+   {
+      // Static methods only
+   }
+
+   /**
+    * Quantizes a coordinate to {@link #Bits} bits.
+    *
+    * @param value the coordinate.
+    * @param origin the smallest coordinate.
+    * @param size the range of coordinates.
+    * @return the quantized coordinate, clamped to the range.
+    */
+   public static long quantize( final double value, final double origin, final double size )
+   {
+      final long q = (long) Math.floor( ( ( value - origin ) / size ) * Scale );
+      return Math.max( 0, Math.min( MaxCoordinate, q ) );
+   }
+
+   /**
+    * Interleaves two quantized coordinates into a key.
+    *
+    * @param x the quantized x coordinate.
+    * @param y the quantized y coordinate.
+    * @return the key.
+    */
+   public static long encode( final long x, final long y )
+   {
+      return spread( x ) | ( spread( y ) << 1 );
+   }
+
+   /**
+    * Gets the quadrant of a key at a level of the tree.
+    *
+    * @param key the key.
+    * @param level the level, with the root at zero.
+    * @return the quadrant, numbered as in {@link QuadTree}.
+    */
+   public static int quadrant( final long key, final int level )
+   {
+      return (int) ( key >>> ( ( 2 * ( Bits - 1 ) ) - ( 2 * level ) ) ) & 3;
+   }
+
+   /**
+    * Spreads the low 32 bits of a value into the even bits of a long.
+    */
+   private static long spread( final long value )
+   {
+      long v = value & MaxCoordinate;
+      v = ( v | ( v << 16 ) ) & 0x0000FFFF0000FFFFL;
+      v = ( v | ( v << 8 ) ) & 0x00FF00FF00FF00FFL;
+      v = ( v | ( v << 4 ) ) & 0x0F0F0F0F0F0F0F0FL;
+      v = ( v | ( v << 2 ) ) & 0x3333333333333333L;
+      v = ( v | ( v << 1 ) ) & 0x5555555555555555L;
+      return v;
+   }
+}
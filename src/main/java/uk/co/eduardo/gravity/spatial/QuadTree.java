@@ -0,0 +1,1050 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.Arrays;
+import java.util.List;
+
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentResultTask;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * A quadtree over a set of point masses, used to approximate the gravitational acceleration on each body using the Barnes-Hut
+ * method.
+ * <p>
+ * Each node carries its mass, centre of mass and quadrupole moment, so a node far enough away is approximated by the first two
+ * non-zero terms of the multipole expansion of its potential rather than just by a point mass. This allows a larger opening angle
+ * for the same accuracy.
+ * <p>
+ * The tree is stored as flat arrays rather than as node objects. Nodes are stored breadth first, so the children of a node are
+ * contiguous and always have larger indices than their parent. Every node covers a contiguous range of the body order, so a leaf
+ * can iterate over its bodies without any further indirection.
+ * <p>
+ * The tree can either be built serially, splitting one node at a time, or {@link #build(double[], double[], double[], int,
+ * PartitionExecutor) in parallel}. The parallel build sorts the bodies by their {@link Morton} key with a parallel
+ * {@link RadixSort}, after which the bodies in every cell of the tree are contiguous and the children of all of the nodes at one
+ * level can be found independently by binary search. Both produce the same layout.
+ * <p>
+ * The acceleration can be found either by walking the tree once for each body, or by walking it once for each group of nearby
+ * bodies. A group walk opens a node if it would be opened for any body in the group, and builds one list of nodes and bodies that
+ * is then evaluated for every body in the group in a tight loop over contiguous arrays.
+ * <p>
+ * Bodies usually move only a small fraction of a cell between iterations, so rather than being built again the tree can be
+ * {@link #refit(double[], double[], double[], int, double, double) refit}. This keeps the topology and body order and only
+ * recomputes the bounds and centres of mass, which is O(N). The bounds are always tight, so the walk stays correct however far the
+ * bodies have moved, but it becomes slower and less accurate as the nodes start to overlap.
+ * <p>
+ * Building the tree is not thread-safe, but once built any number of threads may walk it at the same time.
+ *
+ * @author Ed
+ */
+public class QuadTree
+{
+   /** The maximum depth of the tree. Nodes at this depth are never split, regardless of how many bodies they contain. */
+   public static final int MaxDepth = 32;
+
+   private static final int InitialNodeCapacity = 64;
+
+   private final int leafCapacity;
+
+   private double[] x;
+
+   private double[] y;
+
+   private double[] mass;
+
+   private int bodyCount;
+
+   private int[] order = new int[ 0 ];
+
+   private int[] scratch = new int[ 0 ];
+
+   private long[] keys = new long[ 0 ];
+
+   private long[] keyScratch = new long[ 0 ];
+
+   private int[] quadrantStarts = new int[ 0 ];
+
+   private final IntList groups = new IntList();
+
+   private final int[] quadrantCounts = new int[ 4 ];
+
+   private final int[] quadrantOffsets = new int[ 4 ];
+
+   private int nodeCount;
+
+   private int[] level = new int[ 0 ];
+
+   private int[] start = new int[ 0 ];
+
+   private int[] count = new int[ 0 ];
+
+   private int[] firstChild = new int[ 0 ];
+
+   private int[] childCount = new int[ 0 ];
+
+   private double[] cellX = new double[ 0 ];
+
+   private double[] cellY = new double[ 0 ];
+
+   private double[] cellHalfSize = new double[ 0 ];
+
+   private double[] nodeMass = new double[ 0 ];
+
+   private double[] comX = new double[ 0 ];
+
+   private double[] comY = new double[ 0 ];
+
+   private double[] quadXX = new double[ 0 ];
+
+   private double[] quadYY = new double[ 0 ];
+
+   private double[] quadXY = new double[ 0 ];
+
+   private double[] minX = new double[ 0 ];
+
+   private double[] minY = new double[ 0 ];
+
+   private double[] maxX = new double[ 0 ];
+
+   private double[] maxY = new double[ 0 ];
+
+   /**
+    * Initializes a new QuadTree object.
+    *
+    * @param leafCapacity the maximum number of bodies held by a leaf before it is split.
+    */
+   public QuadTree( final int leafCapacity )
+   {
+      if( leafCapacity < 1 )
+      {
+         throw new IllegalArgumentException();
+      }
+      this.leafCapacity = leafCapacity;
+   }
+
+   /**
+    * Gets the maximum number of bodies held by a leaf before it is split.
+    *
+    * @return the leaf capacity.
+    */
+   public int getLeafCapacity()
+   {
+      return this.leafCapacity;
+   }
+
+   /**
+    * Gets the number of nodes in the tree.
+    *
+    * @return the node count.
+    */
+   public int getNodeCount()
+   {
+      return this.nodeCount;
+   }
+
+   /**
+    * Gets the number of bodies in the tree.
+    *
+    * @return the body count.
+    */
+   public int getBodyCount()
+   {
+      return this.bodyCount;
+   }
+
+   /**
+    * Builds the tree from scratch. The tree keeps a reference to the arrays, which must not be modified while the tree is in use.
+    *
+    * @param x the x coordinates of the bodies.
+    * @param y the y coordinates of the bodies.
+    * @param mass the masses of the bodies.
+    * @param bodyCount the number of bodies. Only the first <code>bodyCount</code> elements of each array are used.
+    */
+   public void build( final double[] x, final double[] y, final double[] mass, final int bodyCount )
+   {
+      this.x = x;
+      this.y = y;
+      this.mass = mass;
+      this.bodyCount = bodyCount;
+      this.nodeCount = 0;
+
+      if( this.order.length < bodyCount )
+      {
+         this.order = new int[ bodyCount ];
+         this.scratch = new int[ bodyCount ];
+      }
+      for( int i = 0; i < bodyCount; i++ )
+      {
+         this.order[ i ] = i;
+      }
+
+      if( bodyCount == 0 )
+      {
+         return;
+      }
+
+      double left = x[ 0 ];
+      double right = x[ 0 ];
+      double bottom = y[ 0 ];
+      double top = y[ 0 ];
+      for( int i = 1; i < bodyCount; i++ )
+      {
+         left = Math.min( left, x[ i ] );
+         right = Math.max( right, x[ i ] );
+         bottom = Math.min( bottom, y[ i ] );
+         top = Math.max( top, y[ i ] );
+      }
+
+      // The root cell is square so that every cell in the tree is square too.
+      final double halfSize = Math.max( Math.max( right - left, top - bottom ) / 2, Double.MIN_NORMAL );
+      addNode( ( left + right ) / 2, ( bottom + top ) / 2, halfSize, 0, 0, bodyCount );
+
+      // Nodes are appended as they are split, so this visits the tree breadth first.
+      for( int node = 0; node < this.nodeCount; node++ )
+      {
+         if( ( this.count[ node ] > this.leafCapacity ) && ( this.level[ node ] < MaxDepth ) )
+         {
+            split( node );
+         }
+      }
+
+      computeMoments();
+   }
+
+   /**
+    * Builds the tree from scratch in parallel. The tree keeps a reference to the arrays, which must not be modified while the tree
+    * is in use.
+    *
+    * @param x the x coordinates of the bodies.
+    * @param y the y coordinates of the bodies.
+    * @param mass the masses of the bodies.
+    * @param bodyCount the number of bodies. Only the first <code>bodyCount</code> elements of each array are used.
+    * @param executor the executor over which the bodies and the nodes of each level are partitioned.
+    */
+   public void build( final double[] x,
+                      final double[] y,
+                      final double[] mass,
+                      final int bodyCount,
+                      final PartitionExecutor executor )
+   {
+      this.x = x;
+      this.y = y;
+      this.mass = mass;
+      this.bodyCount = bodyCount;
+      this.nodeCount = 0;
+
+      if( this.order.length < bodyCount )
+      {
+         this.order = new int[ bodyCount ];
+         this.scratch = new int[ bodyCount ];
+      }
+      if( this.keys.length < bodyCount )
+      {
+         this.keys = new long[ bodyCount ];
+         this.keyScratch = new long[ bodyCount ];
+      }
+
+      if( bodyCount == 0 )
+      {
+         return;
+      }
+
+      final Extent bodies = new Extent( 0, bodyCount - 1 );
+      final double[] bounds = bounds( bodies, executor );
+      final double halfSize = Math.max( Math.max( bounds[ 1 ] - bounds[ 0 ], bounds[ 3 ] - bounds[ 2 ] ) / 2, Double.MIN_NORMAL );
+      final double cx = ( bounds[ 0 ] + bounds[ 1 ] ) / 2;
+      final double cy = ( bounds[ 2 ] + bounds[ 3 ] ) / 2;
+
+      executor.partitionTask( bodies, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            final double left = cx - halfSize;
+            final double bottom = cy - halfSize;
+            for( final int i : extent )
+            {
+               QuadTree.this.keys[ i ] = Morton.encode( Morton.quantize( x[ i ], left, 2 * halfSize ),
+                                                        Morton.quantize( y[ i ], bottom, 2 * halfSize ) );
+               QuadTree.this.order[ i ] = i;
+            }
+         }
+      } );
+      RadixSort.sort( this.keys, this.order, bodyCount, this.keyScratch, this.scratch, executor );
+
+      // Each level is split at once, which appends the whole of the next level. So the nodes remain in breadth first order.
+      final int[] levelStart = new int[ MaxDepth + 2 ];
+      addNode( cx, cy, halfSize, 0, 0, bodyCount );
+      int levels = 0;
+      while( levelStart[ levels ] < this.nodeCount )
+      {
+         final int levelEnd = this.nodeCount;
+         splitLevel( levelStart[ levels ], levelEnd, executor );
+         levelStart[ ++levels ] = levelEnd;
+      }
+
+      for( int depth = levels - 1; depth >= 0; depth-- )
+      {
+         executor.partitionTask( new Extent( levelStart[ depth ], levelStart[ depth + 1 ] - 1 ), new ExtentTask()
+         {
+            @Override
+            public void execute( final Extent extent )
+            {
+               for( final int node : extent )
+               {
+                  computeMoments( node );
+               }
+            }
+         } );
+      }
+   }
+
+   /**
+    * Updates the tree for new positions and masses of the same bodies without changing its topology. The refit is rejected, and
+    * the tree should be built again, if the number of bodies has changed or if the tree has degraded too far.
+    *
+    * @param x the x coordinates of the bodies.
+    * @param y the y coordinates of the bodies.
+    * @param mass the masses of the bodies.
+    * @param bodyCount the number of bodies. Only the first <code>bodyCount</code> elements of each array are used.
+    * @param maxEscapedFraction the largest fraction of the bodies that may have left the cell of their leaf.
+    * @param maxInflation the largest ratio of the size of the bounds of any node to the size of its cell.
+    * @return <code>true</code> if the tree was refit, <code>false</code> if it must be built again.
+    */
+   public boolean refit( final double[] x,
+                         final double[] y,
+                         final double[] mass,
+                         final int bodyCount,
+                         final double maxEscapedFraction,
+                         final double maxInflation )
+   {
+      if( ( this.nodeCount == 0 ) || ( bodyCount != this.bodyCount ) )
+      {
+         return false;
+      }
+
+      int escaped = 0;
+      for( int node = 0; node < this.nodeCount; node++ )
+      {
+         if( this.childCount[ node ] == 0 )
+         {
+            final double half = this.cellHalfSize[ node ];
+            final int end = this.start[ node ] + this.count[ node ];
+            for( int k = this.start[ node ]; k < end; k++ )
+            {
+               final int body = this.order[ k ];
+               if( ( Math.abs( x[ body ] - this.cellX[ node ] ) > half ) || ( Math.abs( y[ body ] - this.cellY[ node ] ) > half ) )
+               {
+                  escaped++;
+               }
+            }
+         }
+      }
+      if( escaped > ( maxEscapedFraction * bodyCount ) )
+      {
+         return false;
+      }
+
+      this.x = x;
+      this.y = y;
+      this.mass = mass;
+      computeMoments();
+
+      for( int node = 0; node < this.nodeCount; node++ )
+      {
+         final double size = Math.max( this.maxX[ node ] - this.minX[ node ], this.maxY[ node ] - this.minY[ node ] );
+         if( size > ( maxInflation * 2 * this.cellHalfSize[ node ] ) )
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Calculates the acceleration of each body within the extent.
+    *
+    * @param extent the extent of body indices for which to calculate the acceleration.
+    * @param theta the opening angle. A node is approximated by its centre of mass if its size divided by its distance from the
+    *           body is less than this.
+    * @param ax the output x components of acceleration.
+    * @param ay the output y components of acceleration.
+    */
+   public void accelerate( final Extent extent, final double theta, final double[] ax, final double[] ay )
+   {
+      final int[] stack = new int[ ( 3 * MaxDepth ) + 4 ];
+      final double theta2 = theta * theta;
+
+      for( final int index : extent )
+      {
+         accelerate( index, theta2, stack, ax, ay );
+      }
+   }
+
+   private void accelerate( final int body, final double theta2, final int[] stack, final double[] ax, final double[] ay )
+   {
+      final double bx = this.x[ body ];
+      final double by = this.y[ body ];
+      double sumX = 0;
+      double sumY = 0;
+
+      int top = 0;
+      if( this.nodeCount > 0 )
+      {
+         stack[ top++ ] = 0;
+      }
+
+      while( top > 0 )
+      {
+         final int node = stack[ --top ];
+
+         if( this.childCount[ node ] == 0 )
+         {
+            // Leaves are always summed directly.
+            final int end = this.start[ node ] + this.count[ node ];
+            for( int k = this.start[ node ]; k < end; k++ )
+            {
+               final int other = this.order[ k ];
+               if( other == body )
+               {
+                  continue;
+               }
+
+               final double dx = this.x[ other ] - bx;
+               final double dy = this.y[ other ] - by;
+               final double r2 = ( dx * dx ) + ( dy * dy );
+               if( r2 > 0 )
+               {
+                  final double a = ( Constants.G * this.mass[ other ] ) / ( r2 * Math.sqrt( r2 ) );
+                  sumX += a * dx;
+                  sumY += a * dy;
+               }
+            }
+            continue;
+         }
+
+         final double dx = this.comX[ node ] - bx;
+         final double dy = this.comY[ node ] - by;
+         final double r2 = ( dx * dx ) + ( dy * dy );
+         final double size = Math.max( this.maxX[ node ] - this.minX[ node ], this.maxY[ node ] - this.minY[ node ] );
+
+         // A node that contains the body is always opened, otherwise the body would attract itself.
+         final boolean contains = ( bx >= this.minX[ node ] ) &&
+                                  ( bx <= this.maxX[ node ] ) &&
+                                  ( by >= this.minY[ node ] ) &&
+                                  ( by <= this.maxY[ node ] );
+
+         if( !contains && ( ( size * size ) < ( theta2 * r2 ) ) )
+         {
+            // With d pointing from the body to the centre of mass, the monopole term is G M d / r^3 and the quadrupole term is
+            // G ( 5/2 (d.Qd) d / r^7 - Qd / r^5 ).
+            final double inverse2 = 1 / r2;
+            final double inverse3 = inverse2 / Math.sqrt( r2 );
+            final double inverse5 = inverse3 * inverse2;
+            final double qx = ( this.quadXX[ node ] * dx ) + ( this.quadXY[ node ] * dy );
+            final double qy = ( this.quadXY[ node ] * dx ) + ( this.quadYY[ node ] * dy );
+            final double radial = ( this.nodeMass[ node ] * inverse3 ) + ( 2.5 * ( ( dx * qx ) + ( dy * qy ) ) * inverse5 * inverse2 );
+            sumX += Constants.G * ( ( radial * dx ) - ( qx * inverse5 ) );
+            sumY += Constants.G * ( ( radial * dy ) - ( qy * inverse5 ) );
+            continue;
+         }
+
+         final int end = this.firstChild[ node ] + this.childCount[ node ];
+         for( int child = this.firstChild[ node ]; child < end; child++ )
+         {
+            stack[ top++ ] = child;
+         }
+      }
+
+      ax[ body ] = sumX;
+      ay[ body ] = sumY;
+   }
+
+   /**
+    * Divides the bodies into the groups used by {@link #accelerateGroups(Extent, double, double[], double[])}. Each group is the
+    * largest node holding no more than <code>groupSize</code> bodies, or a leaf if a leaf holds more than that.
+    *
+    * @param groupSize the largest number of bodies in a group.
+    * @return the number of groups.
+    */
+   public int findGroups( final int groupSize )
+   {
+      this.groups.clear();
+      final int[] stack = new int[ ( 3 * MaxDepth ) + 4 ];
+      int top = 0;
+      if( this.nodeCount > 0 )
+      {
+         stack[ top++ ] = 0;
+      }
+
+      while( top > 0 )
+      {
+         final int node = stack[ --top ];
+         if( ( this.count[ node ] <= groupSize ) || ( this.childCount[ node ] == 0 ) )
+         {
+            this.groups.add( node );
+            continue;
+         }
+
+         final int end = this.firstChild[ node ] + this.childCount[ node ];
+         for( int child = this.firstChild[ node ]; child < end; child++ )
+         {
+            stack[ top++ ] = child;
+         }
+      }
+      return this.groups.size();
+   }
+
+   /**
+    * Calculates the acceleration of each body in a range of the groups found by {@link #findGroups(int)}.
+    *
+    * @param extent the extent of group indices for which to calculate the acceleration.
+    * @param theta the opening angle. A node is approximated by its multipole expansion if its size divided by its distance from
+    *           the nearest point of the bounds of the group is less than this.
+    * @param ax the output x components of acceleration, indexed by body.
+    * @param ay the output y components of acceleration, indexed by body.
+    */
+   public void accelerateGroups( final Extent extent, final double theta, final double[] ax, final double[] ay )
+   {
+      final int[] stack = new int[ ( 3 * MaxDepth ) + 4 ];
+      final InteractionList list = new InteractionList();
+      final double theta2 = theta * theta;
+
+      for( final int group : extent )
+      {
+         buildInteractions( this.groups.get( group ), theta2, stack, list );
+         evaluateInteractions( this.groups.get( group ), list, ax, ay );
+      }
+   }
+
+   private void buildInteractions( final int group, final double theta2, final int[] stack, final InteractionList list )
+   {
+      final double left = this.minX[ group ];
+      final double right = this.maxX[ group ];
+      final double bottom = this.minY[ group ];
+      final double top = this.maxY[ group ];
+      list.clear();
+
+      int depth = 0;
+      stack[ depth++ ] = 0;
+      while( depth > 0 )
+      {
+         final int node = stack[ --depth ];
+
+         if( this.childCount[ node ] == 0 )
+         {
+            final int end = this.start[ node ] + this.count[ node ];
+            for( int k = this.start[ node ]; k < end; k++ )
+            {
+               final int body = this.order[ k ];
+               list.addBody( this.x[ body ], this.y[ body ], this.mass[ body ] );
+            }
+            continue;
+         }
+
+         // The distance from the centre of mass to the nearest point of the group, which is zero if the group contains it.
+         final double dx = Math.max( 0, Math.max( left - this.comX[ node ], this.comX[ node ] - right ) );
+         final double dy = Math.max( 0, Math.max( bottom - this.comY[ node ], this.comY[ node ] - top ) );
+         final double size = Math.max( this.maxX[ node ] - this.minX[ node ], this.maxY[ node ] - this.minY[ node ] );
+         final boolean overlaps = ( this.minX[ node ] <= right ) &&
+                                  ( this.maxX[ node ] >= left ) &&
+                                  ( this.minY[ node ] <= top ) &&
+                                  ( this.maxY[ node ] >= bottom );
+
+         if( !overlaps && ( ( size * size ) < ( theta2 * ( ( dx * dx ) + ( dy * dy ) ) ) ) )
+         {
+            list.addNode( this.comX[ node ],
+                          this.comY[ node ],
+                          this.nodeMass[ node ],
+                          this.quadXX[ node ],
+                          this.quadYY[ node ],
+                          this.quadXY[ node ] );
+            continue;
+         }
+
+         final int end = this.firstChild[ node ] + this.childCount[ node ];
+         for( int child = this.firstChild[ node ]; child < end; child++ )
+         {
+            stack[ depth++ ] = child;
+         }
+      }
+   }
+
+   private void evaluateInteractions( final int group, final InteractionList list, final double[] ax, final double[] ay )
+   {
+      final int end = this.start[ group ] + this.count[ group ];
+      for( int k = this.start[ group ]; k < end; k++ )
+      {
+         final int body = this.order[ k ];
+         final double bx = this.x[ body ];
+         final double by = this.y[ body ];
+         double sumX = 0;
+         double sumY = 0;
+
+         // The body itself is in the list, but is the only one at zero distance apart from any that coincide with it.
+         for( int p = 0; p < list.bodyCount; p++ )
+         {
+            final double dx = list.bodyX[ p ] - bx;
+            final double dy = list.bodyY[ p ] - by;
+            final double r2 = ( dx * dx ) + ( dy * dy );
+            if( r2 > 0 )
+            {
+               final double a = list.bodyMass[ p ] / ( r2 * Math.sqrt( r2 ) );
+               sumX += a * dx;
+               sumY += a * dy;
+            }
+         }
+
+         for( int n = 0; n < list.nodeCount; n++ )
+         {
+            final double dx = list.nodeX[ n ] - bx;
+            final double dy = list.nodeY[ n ] - by;
+            final double inverse2 = 1 / ( ( dx * dx ) + ( dy * dy ) );
+            final double inverse3 = inverse2 * Math.sqrt( inverse2 );
+            final double inverse5 = inverse3 * inverse2;
+            final double qx = ( list.nodeXX[ n ] * dx ) + ( list.nodeXY[ n ] * dy );
+            final double qy = ( list.nodeXY[ n ] * dx ) + ( list.nodeYY[ n ] * dy );
+            final double radial = ( list.nodeMass[ n ] * inverse3 ) + ( 2.5 * ( ( dx * qx ) + ( dy * qy ) ) * inverse5 * inverse2 );
+            sumX += ( radial * dx ) - ( qx * inverse5 );
+            sumY += ( radial * dy ) - ( qy * inverse5 );
+         }
+
+         ax[ body ] = Constants.G * sumX;
+         ay[ body ] = Constants.G * sumY;
+      }
+   }
+
+   private void split( final int node )
+   {
+      final double cx = this.cellX[ node ];
+      final double cy = this.cellY[ node ];
+      final int first = this.start[ node ];
+      final int end = first + this.count[ node ];
+
+      // Counting sort of the bodies in this node by quadrant.
+      Arrays.fill( this.quadrantCounts, 0 );
+      for( int k = first; k < end; k++ )
+      {
+         this.quadrantCounts[ quadrant( this.order[ k ], cx, cy ) ]++;
+      }
+
+      final int[] offsets = this.quadrantOffsets;
+      offsets[ 0 ] = first;
+      for( int q = 1; q < 4; q++ )
+      {
+         offsets[ q ] = offsets[ q - 1 ] + this.quadrantCounts[ q - 1 ];
+      }
+
+      for( int k = first; k < end; k++ )
+      {
+         final int body = this.order[ k ];
+         this.scratch[ offsets[ quadrant( body, cx, cy ) ]++ ] = body;
+      }
+      System.arraycopy( this.scratch, first, this.order, first, end - first );
+
+      // Only the non-empty quadrants become children. They are added consecutively so they are contiguous.
+      final double halfSize = this.cellHalfSize[ node ] / 2;
+      this.firstChild[ node ] = this.nodeCount;
+      int childStart = first;
+      for( int q = 0; q < 4; q++ )
+      {
+         if( this.quadrantCounts[ q ] == 0 )
+         {
+            continue;
+         }
+
+         final double childX = ( q & 1 ) == 0 ? cx - halfSize : cx + halfSize;
+         final double childY = ( q & 2 ) == 0 ? cy - halfSize : cy + halfSize;
+         addNode( childX, childY, halfSize, this.level[ node ] + 1, childStart, this.quadrantCounts[ q ] );
+         this.childCount[ node ]++;
+         childStart += this.quadrantCounts[ q ];
+      }
+   }
+
+   /**
+    * Splits every node in a level that holds too many bodies, appending their children to the tree. The bodies must be sorted by
+    * Morton key.
+    */
+   private void splitLevel( final int first, final int end, final PartitionExecutor executor )
+   {
+      if( this.quadrantStarts.length < ( 5 * ( end - first ) ) )
+      {
+         this.quadrantStarts = new int[ 5 * ( end - first ) ];
+      }
+
+      executor.partitionTask( new Extent( first, end - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int node : extent )
+            {
+               findQuadrants( node, 5 * ( node - first ) );
+            }
+         }
+      } );
+
+      int next = this.nodeCount;
+      for( int node = first; node < end; node++ )
+      {
+         if( this.childCount[ node ] > 0 )
+         {
+            this.firstChild[ node ] = next;
+            next += this.childCount[ node ];
+         }
+      }
+      ensureNodeCapacity( next );
+
+      executor.partitionTask( new Extent( first, end - 1 ), new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int node : extent )
+            {
+               addChildren( node, 5 * ( node - first ) );
+            }
+         }
+      } );
+      this.nodeCount = next;
+   }
+
+   /**
+    * Finds where each quadrant of a node starts in the body order, and from that how many children the node will have.
+    */
+   private void findQuadrants( final int node, final int offset )
+   {
+      if( ( this.count[ node ] <= this.leafCapacity ) || ( this.level[ node ] >= MaxDepth ) )
+      {
+         return;
+      }
+
+      final int first = this.start[ node ];
+      final int end = first + this.count[ node ];
+
+      this.quadrantStarts[ offset ] = first;
+      for( int q = 1; q < 4; q++ )
+      {
+         this.quadrantStarts[ offset + q ] = lowerBound( this.quadrantStarts[ offset + q - 1 ], end, this.level[ node ], q );
+      }
+      this.quadrantStarts[ offset + 4 ] = end;
+
+      int children = 0;
+      for( int q = 0; q < 4; q++ )
+      {
+         if( this.quadrantStarts[ offset + q + 1 ] > this.quadrantStarts[ offset + q ] )
+         {
+            children++;
+         }
+      }
+      this.childCount[ node ] = children;
+   }
+
+   /**
+    * Finds the first body in the range whose quadrant at the given level is at least <code>quadrant</code>.
+    */
+   private int lowerBound( final int first, final int end, final int depth, final int quadrant )
+   {
+      int low = first;
+      int high = end;
+      while( low < high )
+      {
+         final int middle = ( low + high ) >>> 1;
+         if( Morton.quadrant( this.keys[ middle ], depth ) < quadrant )
+         {
+            low = middle + 1;
+         }
+         else
+         {
+            high = middle;
+         }
+      }
+      return low;
+   }
+
+   private void addChildren( final int node, final int offset )
+   {
+      if( this.childCount[ node ] == 0 )
+      {
+         return;
+      }
+
+      final double halfSize = this.cellHalfSize[ node ] / 2;
+      int child = this.firstChild[ node ];
+      for( int q = 0; q < 4; q++ )
+      {
+         final int childStart = this.quadrantStarts[ offset + q ];
+         final int size = this.quadrantStarts[ offset + q + 1 ] - childStart;
+         if( size == 0 )
+         {
+            continue;
+         }
+
+         final double childX = ( q & 1 ) == 0 ? this.cellX[ node ] - halfSize : this.cellX[ node ] + halfSize;
+         final double childY = ( q & 2 ) == 0 ? this.cellY[ node ] - halfSize : this.cellY[ node ] + halfSize;
+         setNode( child++, childX, childY, halfSize, this.level[ node ] + 1, childStart, size );
+      }
+   }
+
+   private double[] bounds( final Extent bodies, final PartitionExecutor executor )
+   {
+      final List< double[] > partial = executor.partitionResultTask( bodies, new ExtentResultTask< double[] >()
+      {
+         @Override
+         public double[] execute( final Extent extent )
+         {
+            final double[] result =
+            {
+               Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+            };
+            for( final int i : extent )
+            {
+               result[ 0 ] = Math.min( result[ 0 ], QuadTree.this.x[ i ] );
+               result[ 1 ] = Math.max( result[ 1 ], QuadTree.this.x[ i ] );
+               result[ 2 ] = Math.min( result[ 2 ], QuadTree.this.y[ i ] );
+               result[ 3 ] = Math.max( result[ 3 ], QuadTree.this.y[ i ] );
+            }
+            return result;
+         }
+      } );
+
+      final double[] bounds = partial.get( 0 );
+      for( final double[] part : partial )
+      {
+         bounds[ 0 ] = Math.min( bounds[ 0 ], part[ 0 ] );
+         bounds[ 1 ] = Math.max( bounds[ 1 ], part[ 1 ] );
+         bounds[ 2 ] = Math.min( bounds[ 2 ], part[ 2 ] );
+         bounds[ 3 ] = Math.max( bounds[ 3 ], part[ 3 ] );
+      }
+      return bounds;
+   }
+
+   private int quadrant( final int body, final double cx, final double cy )
+   {
+      return ( this.x[ body ] >= cx ? 1 : 0 ) | ( this.y[ body ] >= cy ? 2 : 0 );
+   }
+
+   private int addNode( final double cx, final double cy, final double halfSize, final int depth, final int first, final int size )
+   {
+      ensureNodeCapacity( this.nodeCount + 1 );
+
+      final int node = this.nodeCount++;
+      setNode( node, cx, cy, halfSize, depth, first, size );
+      return node;
+   }
+
+   private void setNode( final int node,
+                         final double cx,
+                         final double cy,
+                         final double halfSize,
+                         final int depth,
+                         final int first,
+                         final int size )
+   {
+      this.cellX[ node ] = cx;
+      this.cellY[ node ] = cy;
+      this.cellHalfSize[ node ] = halfSize;
+      this.level[ node ] = depth;
+      this.start[ node ] = first;
+      this.count[ node ] = size;
+      this.firstChild[ node ] = -1;
+      this.childCount[ node ] = 0;
+   }
+
+   private void computeMoments()
+   {
+      // Children always follow their parents, so visiting the nodes in reverse guarantees the children are done first.
+      for( int node = this.nodeCount - 1; node >= 0; node-- )
+      {
+         computeMoments( node );
+      }
+   }
+
+   /**
+    * Calculates the mass, centre of mass, bounds and quadrupole moment of a node from its bodies or its children. The quadrupole
+    * moment about the centre of mass is Q = sum m ( 3 d d<sup>T</sup> - |d|<sup>2</sup> I ), and the moments of the children are
+    * moved to the centre of mass of the parent with the parallel axis theorem.
+    */
+   private void computeMoments( final int node )
+   {
+      double m = 0;
+      double mx = 0;
+      double my = 0;
+      double left = Double.POSITIVE_INFINITY;
+      double bottom = Double.POSITIVE_INFINITY;
+      double right = Double.NEGATIVE_INFINITY;
+      double top = Double.NEGATIVE_INFINITY;
+
+      final boolean leaf = this.childCount[ node ] == 0;
+      final int first = leaf ? this.start[ node ] : this.firstChild[ node ];
+      final int end = first + ( leaf ? this.count[ node ] : this.childCount[ node ] );
+
+      for( int k = first; k < end; k++ )
+      {
+         if( leaf )
+         {
+            final int body = this.order[ k ];
+            final double bx = this.x[ body ];
+            final double by = this.y[ body ];
+            m += this.mass[ body ];
+            mx += this.mass[ body ] * bx;
+            my += this.mass[ body ] * by;
+            left = Math.min( left, bx );
+            bottom = Math.min( bottom, by );
+            right = Math.max( right, bx );
+            top = Math.max( top, by );
+         }
+         else
+         {
+            m += this.nodeMass[ k ];
+            mx += this.nodeMass[ k ] * this.comX[ k ];
+            my += this.nodeMass[ k ] * this.comY[ k ];
+            left = Math.min( left, this.minX[ k ] );
+            bottom = Math.min( bottom, this.minY[ k ] );
+            right = Math.max( right, this.maxX[ k ] );
+            top = Math.max( top, this.maxY[ k ] );
+         }
+      }
+
+      final double cx = m > 0 ? mx / m : this.cellX[ node ];
+      final double cy = m > 0 ? my / m : this.cellY[ node ];
+
+      double qxx = 0;
+      double qyy = 0;
+      double qxy = 0;
+      for( int k = first; k < end; k++ )
+      {
+         final double pointMass;
+         final double dx;
+         final double dy;
+         if( leaf )
+         {
+            final int body = this.order[ k ];
+            pointMass = this.mass[ body ];
+            dx = this.x[ body ] - cx;
+            dy = this.y[ body ] - cy;
+         }
+         else
+         {
+            pointMass = this.nodeMass[ k ];
+            dx = this.comX[ k ] - cx;
+            dy = this.comY[ k ] - cy;
+            qxx += this.quadXX[ k ];
+            qyy += this.quadYY[ k ];
+            qxy += this.quadXY[ k ];
+         }
+         qxx += pointMass * ( ( 2 * dx * dx ) - ( dy * dy ) );
+         qyy += pointMass * ( ( 2 * dy * dy ) - ( dx * dx ) );
+         qxy += pointMass * 3 * dx * dy;
+      }
+
+      this.nodeMass[ node ] = m;
+      this.comX[ node ] = cx;
+      this.comY[ node ] = cy;
+      this.quadXX[ node ] = qxx;
+      this.quadYY[ node ] = qyy;
+      this.quadXY[ node ] = qxy;
+      this.minX[ node ] = left;
+      this.minY[ node ] = bottom;
+      this.maxX[ node ] = right;
+      this.maxY[ node ] = top;
+   }
+
+   private void ensureNodeCapacity( final int capacity )
+   {
+      if( capacity <= this.level.length )
+      {
+         return;
+      }
+
+      final int size = Math.max( capacity, Math.max( InitialNodeCapacity, this.level.length * 2 ) );
+      this.level = Arrays.copyOf( this.level, size );
+      this.start = Arrays.copyOf( this.start, size );
+      this.count = Arrays.copyOf( this.count, size );
+      this.firstChild = Arrays.copyOf( this.firstChild, size );
+      this.childCount = Arrays.copyOf( this.childCount, size );
+      this.cellX = Arrays.copyOf( this.cellX, size );
+      this.cellY = Arrays.copyOf( this.cellY, size );
+      this.cellHalfSize = Arrays.copyOf( this.cellHalfSize, size );
+      this.nodeMass = Arrays.copyOf( this.nodeMass, size );
+      this.comX = Arrays.copyOf( this.comX, size );
+      this.comY = Arrays.copyOf( this.comY, size );
+      this.quadXX = Arrays.copyOf( this.quadXX, size );
+      this.quadYY = Arrays.copyOf( this.quadYY, size );
+      this.quadXY = Arrays.copyOf( this.quadXY, size );
+      this.minX = Arrays.copyOf( this.minX, size );
+      this.minY = Arrays.copyOf( this.minY, size );
+      this.maxX = Arrays.copyOf( this.maxX, size );
+      this.maxY = Arrays.copyOf( this.maxY, size );
+   }
+
+   /**
+    * The bodies and nodes that a group of bodies interacts with, stored as contiguous arrays.
+    */
+   private static final class InteractionList
+   {
+      private int bodyCount;
+
+      private double[] bodyX = new double[ 64 ];
+
+      private double[] bodyY = new double[ 64 ];
+
+      private double[] bodyMass = new double[ 64 ];
+
+      private int nodeCount;
+
+      private double[] nodeX = new double[ 64 ];
+
+      private double[] nodeY = new double[ 64 ];
+
+      private double[] nodeMass = new double[ 64 ];
+
+      private double[] nodeXX = new double[ 64 ];
+
+      private double[] nodeYY = new double[ 64 ];
+
+      private double[] nodeXY = new double[ 64 ];
+
+      private void clear()
+      {
+         this.bodyCount = 0;
+         this.nodeCount = 0;
+      }
+
+      private void addBody( final double x, final double y, final double mass )
+      {
+         if( this.bodyCount == this.bodyX.length )
+         {
+            final int size = this.bodyCount * 2;
+            this.bodyX = Arrays.copyOf( this.bodyX, size );
+            this.bodyY = Arrays.copyOf( this.bodyY, size );
+            this.bodyMass = Arrays.copyOf( this.bodyMass, size );
+         }
+         this.bodyX[ this.bodyCount ] = x;
+         this.bodyY[ this.bodyCount ] = y;
+         this.bodyMass[ this.bodyCount++ ] = mass;
+      }
+
+      private void addNode( final double x, final double y, final double mass, final double xx, final double yy, final double xy )
+      {
+         if( this.nodeCount == this.nodeX.length )
+         {
+            final int size = this.nodeCount * 2;
+            this.nodeX = Arrays.copyOf( this.nodeX, size );
+            this.nodeY = Arrays.copyOf( this.nodeY, size );
+            this.nodeMass = Arrays.copyOf( this.nodeMass, size );
+            this.nodeXX = Arrays.copyOf( this.nodeXX, size );
+            this.nodeYY = Arrays.copyOf( this.nodeYY, size );
+            this.nodeXY = Arrays.copyOf( this.nodeXY, size );
+         }
+         this.nodeX[ this.nodeCount ] = x;
+         this.nodeY[ this.nodeCount ] = y;
+         this.nodeMass[ this.nodeCount ] = mass;
+         this.nodeXX[ this.nodeCount ] = xx;
+         this.nodeYY[ this.nodeCount ] = yy;
+         this.nodeXY[ this.nodeCount++ ] = xy;
+      }
+   }
+}
@@ -0,0 +1,170 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Parallel least significant digit radix sort of unsigned 64 bit keys, each carrying an int value.
+ * <p>
+ * Each pass sorts on one byte. Every partition counts the digits in its own contiguous part of the input, the counts are combined
+ * into per-partition offsets, and every partition then scatters its part to the output. The sort is stable, and a pass is skipped
+ * entirely when every key has the same digit, which is common in the high bytes.
+ *
+ * @author Ed
+ */
+public final class RadixSort
+{
+   private static final int DigitBits = 8;
+
+   private static final int Radix = 1 << DigitBits;
+
+   private RadixSort()
+   {
+      // Static methods only
+   }
+
+   /**
+    * Sorts the keys into ascending unsigned order, moving the values with them.
+    *
+    * @param keys the keys to sort.
+    * @param values the values to move with the keys.
+    * @param count the number of keys. Only the first <code>count</code> elements of each array are used.
+    * @param keyScratch working space for at least <code>count</code> keys.
+    * @param valueScratch working space for at least <code>count</code> values.
+    * @param executor the executor over which each pass is partitioned.
+    */
+   public static void sort( final long[] keys,
+                            final int[] values,
+                            final int count,
+                            final long[] keyScratch,
+                            final int[] valueScratch,
+                            final PartitionExecutor executor )
+   {
+      if( count < 2 )
+      {
+         return;
+      }
+
+      final Extent[] parts = executor.partition( new Extent( 0, count - 1 ) );
+      final int[][] offsets = new int[ parts.length ][ Radix ];
+
+      long[] sourceKeys = keys;
+      int[] sourceValues = values;
+      long[] targetKeys = keyScratch;
+      int[] targetValues = valueScratch;
+
+      for( int shift = 0; shift < Long.SIZE; shift += DigitBits )
+      {
+         count( sourceKeys, parts, shift, offsets, executor );
+         if( !prefixSum( offsets, count ) )
+         {
+            continue;
+         }
+
+         scatter( sourceKeys, sourceValues, targetKeys, targetValues, parts, shift, offsets, executor );
+
+         final long[] keySwap = sourceKeys;
+         sourceKeys = targetKeys;
+         targetKeys = keySwap;
+         final int[] valueSwap = sourceValues;
+         sourceValues = targetValues;
+         targetValues = valueSwap;
+      }
+
+      if( sourceKeys != keys )
+      {
+         System.arraycopy( sourceKeys, 0, keys, 0, count );
+         System.arraycopy( sourceValues, 0, values, 0, count );
+      }
+   }
+
+   private static void count( final long[] keys,
+                              final Extent[] parts,
+                              final int shift,
+                              final int[][] counts,
+                              final PartitionExecutor executor )
+   {
+      final List< Runnable > tasks = new ArrayList<>( parts.length );
+      for( int p = 0; p < parts.length; p++ )
+      {
+         final Extent part = parts[ p ];
+         final int[] histogram = counts[ p ];
+         tasks.add( new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               for( int d = 0; d < Radix; d++ )
+               {
+                  histogram[ d ] = 0;
+               }
+               for( int i = part.getFirst(); i <= part.getLast(); i++ )
+               {
+                  histogram[ (int) ( keys[ i ] >>> shift ) & ( Radix - 1 ) ]++;
+               }
+            }
+         } );
+      }
+      executor.executeTasks( tasks );
+   }
+
+   /**
+    * Turns the per-partition digit counts into the offset at which each partition writes each digit. Partitions are ordered
+    * within each digit, which keeps the sort stable.
+    *
+    * @return <code>false</code> if every key has the same digit, in which case the pass can be skipped.
+    */
+   private static boolean prefixSum( final int[][] counts, final int total )
+   {
+      int offset = 0;
+      for( int d = 0; d < Radix; d++ )
+      {
+         final int first = offset;
+         for( final int[] histogram : counts )
+         {
+            final int n = histogram[ d ];
+            histogram[ d ] = offset;
+            offset += n;
+         }
+         if( ( offset - first ) == total )
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static void scatter( final long[] sourceKeys,
+                                final int[] sourceValues,
+                                final long[] targetKeys,
+                                final int[] targetValues,
+                                final Extent[] parts,
+                                final int shift,
+                                final int[][] offsets,
+                                final PartitionExecutor executor )
+   {
+      final List< Runnable > tasks = new ArrayList<>( parts.length );
+      for( int p = 0; p < parts.length; p++ )
+      {
+         final Extent part = parts[ p ];
+         final int[] offset = offsets[ p ];
+         tasks.add( new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               for( int i = part.getFirst(); i <= part.getLast(); i++ )
+               {
+                  final int target = offset[ (int) ( sourceKeys[ i ] >>> shift ) & ( Radix - 1 ) ]++;
+                  targetKeys[ target ] = sourceKeys[ i ];
+                  targetValues[ target ] = sourceValues[ i ];
+               }
+            }
+         } );
+      }
+      executor.executeTasks( tasks );
+   }
+}
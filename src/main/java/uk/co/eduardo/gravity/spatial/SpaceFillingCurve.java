@@ -0,0 +1,164 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.List;
+
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentResultTask;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Curves that visit every cell of a grid once and keep points that are close along the curve close in space. Sorting points by
+ * their position along a curve gives an order in which spatial neighbours are usually also neighbours in memory.
+ *
+ * @author Ed
+ */
+public enum SpaceFillingCurve
+{
+   /** The Morton or Z-order curve. It is the cheapest to compute but jumps across the grid between quadrants. */
+   ZOrder
+   {
+      @Override
+      public long key( final long x, final long y )
+      {
+         return Morton.encode( x, y );
+      }
+   },
+
+   /** The Hilbert curve. Consecutive cells along it are always adjacent, which gives slightly better locality than Morton. */
+   Hilbert
+   {
+      @Override
+      public long key( final long x, final long y )
+      {
+         long qx = x;
+         long qy = y;
+         long key = 0;
+         for( long s = 1L << ( Morton.Bits - 1 ); s > 0; s >>>= 1 )
+         {
+            final long rx = ( qx & s ) != 0 ? 1 : 0;
+            final long ry = ( qy & s ) != 0 ? 1 : 0;
+            key += s * s * ( ( 3 * rx ) ^ ry );
+
+            // Rotate the quadrant so that the curve within it joins up with its neighbours.
+            if( ry == 0 )
+            {
+               if( rx == 1 )
+               {
+                  qx = ( s - 1 ) - ( qx & ( s - 1 ) );
+                  qy = ( s - 1 ) - ( qy & ( s - 1 ) );
+               }
+               final long swap = qx;
+               qx = qy;
+               qy = swap;
+            }
+         }
+         return key;
+      }
+   };
+
+   /** The system property giving the number of iterations between reordering the bodies. Reordering is off if it is not set. */
+   public static final String ReorderIntervalProperty = "reorderInterval"; //$NON-NLS-1$
+
+   /** The system property naming the curve along which the bodies are reordered. Hilbert is used if it is not set. */
+   public static final String ReorderCurveProperty = "reorderCurve"; //$NON-NLS-1$
+
+   /**
+    * Gets the curve named by the {@value #ReorderCurveProperty} system property.
+    *
+    * @return the curve.
+    */
+   public static SpaceFillingCurve fromSystemProperty()
+   {
+      return valueOf( System.getProperty( ReorderCurveProperty, Hilbert.name() ) );
+   }
+
+   /**
+    * Gets the number of iterations between reordering the bodies from the {@value #ReorderIntervalProperty} system property.
+    *
+    * @return the interval, or zero if the bodies should never be reordered.
+    */
+   public static int reorderIntervalFromSystemProperty()
+   {
+      return Math.max( 0, Integer.getInteger( ReorderIntervalProperty, 0 ).intValue() );
+   }
+
+   /**
+    * Gets the position along the curve of a grid cell.
+    *
+    * @param x the x coordinate quantized to {@link Morton#Bits} bits.
+    * @param y the y coordinate quantized to {@link Morton#Bits} bits.
+    * @return the position along the curve, as an unsigned value.
+    */
+   public abstract long key( long x, long y );
+
+   /**
+    * Orders a set of points along the curve.
+    *
+    * @param x the x coordinates of the points.
+    * @param y the y coordinates of the points.
+    * @param count the number of points. Only the first <code>count</code> elements of each array are used.
+    * @param executor the executor over which the keys and the sort are partitioned.
+    * @return the index of the point at each position along the curve.
+    */
+   public int[] order( final double[] x, final double[] y, final int count, final PartitionExecutor executor )
+   {
+      final int[] order = new int[ count ];
+      if( count == 0 )
+      {
+         return order;
+      }
+
+      final Extent points = new Extent( 0, count - 1 );
+      final List< double[] > partial = executor.partitionResultTask( points, new ExtentResultTask< double[] >()
+      {
+         @Override
+         public double[] execute( final Extent extent )
+         {
+            final double[] result =
+            {
+               Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+            };
+            for( final int i : extent )
+            {
+               result[ 0 ] = Math.min( result[ 0 ], x[ i ] );
+               result[ 1 ] = Math.max( result[ 1 ], x[ i ] );
+               result[ 2 ] = Math.min( result[ 2 ], y[ i ] );
+               result[ 3 ] = Math.max( result[ 3 ], y[ i ] );
+            }
+            return result;
+         }
+      } );
+
+      final double[] bounds = partial.get( 0 );
+      for( final double[] part : partial )
+      {
+         bounds[ 0 ] = Math.min( bounds[ 0 ], part[ 0 ] );
+         bounds[ 1 ] = Math.max( bounds[ 1 ], part[ 1 ] );
+         bounds[ 2 ] = Math.min( bounds[ 2 ], part[ 2 ] );
+         bounds[ 3 ] = Math.max( bounds[ 3 ], part[ 3 ] );
+      }
+
+      // The grid is square so that both axes are quantized equally.
+      final double originX = bounds[ 0 ];
+      final double originY = bounds[ 2 ];
+      final double size = Math.max( Math.max( bounds[ 1 ] - bounds[ 0 ], bounds[ 3 ] - bounds[ 2 ] ), Double.MIN_NORMAL );
+      final long[] keys = new long[ count ];
+      executor.partitionTask( points, new ExtentTask()
+      {
+         @Override
+         public void execute( final Extent extent )
+         {
+            for( final int i : extent )
+            {
+               keys[ i ] = key( Morton.quantize( x[ i ], originX, size ),
+                                Morton.quantize( y[ i ], originY, size ) );
+               order[ i ] = i;
+            }
+         }
+      } );
+
+      RadixSort.sort( keys, order, count, new long[ count ], new int[ count ], executor );
+      return order;
+   }
+}
@@ -0,0 +1,76 @@
+package uk.co.eduardo.gravity.spatial;
+
+/**
+ * Continuous collision detection between two circles that each move in a straight line over a step.
+ * <p>
+ * Testing for overlap only at the end of each step misses circles that are moving fast enough to pass through each other within
+ * a single step. Working in the frame of one circle, the other moves along a segment, and the earliest time at which the
+ * distance between them falls to the sum of their radii is found by solving a quadratic.
+ *
+ * @author Ed
+ */
+public final class SweptCircle
+{
+   private SweptCircle()
+   {
+      // Static methods only
+   }
+
+   /**
+    * Finds the earliest time within a step at which two circles that were apart at the start of the step come into contact.
+    *
+    * @param dx the x component of the separation of the circles at the end of the step.
+    * @param dy the y component of the separation of the circles at the end of the step.
+    * @param mx the x component of the relative motion of the circles over the step.
+    * @param my the y component of the relative motion of the circles over the step.
+    * @param radius the sum of the radii of the circles.
+    * @return the time of first contact as a fraction of the step, from zero exclusive to one inclusive, or
+    *         {@link Double#POSITIVE_INFINITY} if the circles were already touching at the start of the step or do not touch
+    *         during it.
+    */
+   public static double timeOfContact( final double dx, final double dy, final double mx, final double my, final double radius )
+   {
+      // The separation at the start of the step, which changes linearly to the separation at the end.
+      final double sx = dx - mx;
+      final double sy = dy - my;
+
+      // Solve | s + t m |^2 = radius^2 for the smallest t
+      final double a = ( mx * mx ) + ( my * my );
+      final double b = 2 * ( ( sx * mx ) + ( sy * my ) );
+      final double c = ( ( sx * sx ) + ( sy * sy ) ) - ( radius * radius );
+      if( ( c <= 0 ) || ( b >= 0 ) || ( a == 0 ) )
+      {
+         // Touching at the start, which was dealt with by the last step, or not closing.
+         return Double.POSITIVE_INFINITY;
+      }
+
+      final double discriminant = ( b * b ) - ( 4 * a * c );
+      if( discriminant < 0 )
+      {
+         return Double.POSITIVE_INFINITY;
+      }
+
+      final double t = ( -b - Math.sqrt( discriminant ) ) / ( 2 * a );
+      return t <= 1 ? t : Double.POSITIVE_INFINITY;
+   }
+
+   /**
+    * Finds the smallest distance between two points that each move in a straight line over a step.
+    *
+    * @param dx the x component of the separation of the points at the end of the step.
+    * @param dy the y component of the separation of the points at the end of the step.
+    * @param mx the x component of the relative motion of the points over the step.
+    * @param my the y component of the relative motion of the points over the step.
+    * @return the distance of closest approach at any time during the step, including its start and end.
+    */
+   public static double closestApproach( final double dx, final double dy, final double mx, final double my )
+   {
+      final double sx = dx - mx;
+      final double sy = dy - my;
+      final double a = ( mx * mx ) + ( my * my );
+      final double t = a > 0 ? Math.max( 0, Math.min( 1, -( ( sx * mx ) + ( sy * my ) ) / a ) ) : 1;
+      final double x = sx + ( t * mx );
+      final double y = sy + ( t * my );
+      return Math.sqrt( ( x * x ) + ( y * y ) );
+   }
+}
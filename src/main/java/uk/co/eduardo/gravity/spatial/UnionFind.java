@@ -0,0 +1,84 @@
+package uk.co.eduardo.gravity.spatial;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint sets over the integers from zero, used to group bodies into clusters.
+ * <p>
+ * Any number of threads may find and join sets at the same time without locking. A root is only ever changed by a compare and
+ * set from itself, and the larger root is always linked under the smaller, so the root of every set is its smallest element
+ * whatever order the sets were joined in.
+ *
+ * @author Ed
+ */
+public class UnionFind
+{
+   private final AtomicIntegerArray parent;
+
+   /**
+    * Initializes a new UnionFind object in which every element is in a set of its own.
+    *
+    * @param count the number of elements.
+    */
+   public UnionFind( final int count )
+   {
+      this.parent = new AtomicIntegerArray( count );
+      for( int i = 0; i < count; i++ )
+      {
+         this.parent.set( i, i );
+      }
+   }
+
+   /**
+    * Finds the root of the set containing an element.
+    *
+    * @param element the element.
+    * @return the smallest element in the set, once every join has finished.
+    */
+   public int find( final int element )
+   {
+      int i = element;
+      while( true )
+      {
+         final int p = this.parent.get( i );
+         if( p == i )
+         {
+            return i;
+         }
+
+         // Path halving. If another thread got there first the link is just left as it is.
+         final int grandparent = this.parent.get( p );
+         if( grandparent != p )
+         {
+            this.parent.compareAndSet( i, p, grandparent );
+         }
+         i = grandparent;
+      }
+   }
+
+   /**
+    * Joins the sets containing two elements.
+    *
+    * @param a the first element.
+    * @param b the second element.
+    */
+   public void union( final int a, final int b )
+   {
+      while( true )
+      {
+         final int rootA = find( a );
+         final int rootB = find( b );
+         if( rootA == rootB )
+         {
+            return;
+         }
+
+         final int low = Math.min( rootA, rootB );
+         final int high = Math.max( rootA, rootB );
+         if( this.parent.compareAndSet( high, high, low ) )
+         {
+            return;
+         }
+      }
+   }
+}
@@ -0,0 +1,157 @@
+package uk.co.eduardo.gravity.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes elements by index on multiple threads, keeping the rest in their original order, for elements held in any number of
+ * arrays, buffers or columns.
+ * <p>
+ * The indices are partitioned as they would be for any other task. Each partition counts the elements that it keeps, an
+ * exclusive prefix sum of the counts gives the index in the output at which each partition starts, and then every partition moves
+ * its elements to the output at the same time. Subclasses say which elements are kept and how an element is moved. The output
+ * must not be the input, since a partition may move its elements over the elements of another that have not yet been read.
+ * <p>
+ * An instance reuses its arrays from one compaction to the next, so it must not run more than one compaction at once.
+ *
+ * @author Ed
+ */
+public abstract class IndexCompaction
+{
+   private final PartitionExecutor executor;
+
+   private int[] offsets = new int[ 0 ];
+
+   /**
+    * Initializes a new IndexCompaction object.
+    *
+    * @param executor the executor on which to run the compactions.
+    */
+   protected IndexCompaction( final PartitionExecutor executor )
+   {
+      this.executor = executor;
+   }
+
+   /**
+    * Moves the elements that are kept from the start of the input to the start of the output, in the same order.
+    *
+    * @param length the number of elements at the start of the input to compact.
+    * @return the number of elements that were kept.
+    * @throws IllegalStateException if any partition failed, in which case the output is incomplete.
+    */
+   public int compact( final int length )
+   {
+      if( length < 0 )
+      {
+         throw new IllegalArgumentException();
+      }
+      if( length == 0 )
+      {
+         return 0;
+      }
+
+      final Extent[] extents = this.executor.partition( new Extent( 0, length - 1 ) );
+      if( this.offsets.length < extents.length )
+      {
+         this.offsets = new int[ extents.length ];
+      }
+      final int[] offsets = this.offsets;
+
+      // The results come back in the order of the extents. The executor only logs a partition that fails, so check that none did.
+      final List< Integer > counts = this.executor.executeTask( extents, new ExtentResultTask< Integer >()
+      {
+         @Override
+         public Integer execute( final Extent extent )
+         {
+            int kept = 0;
+            for( int i = extent.getFirst(); i <= extent.getLast(); i++ )
+            {
+               if( keep( i ) )
+               {
+                  kept++;
+               }
+            }
+            return Integer.valueOf( kept );
+         }
+      } );
+      if( ( counts.size() != extents.length ) || counts.contains( null ) )
+      {
+         throw new IllegalStateException();
+      }
+
+      int count = 0;
+      for( int p = 0; p < extents.length; p++ )
+      {
+         offsets[ p ] = count;
+         count += counts.get( p ).intValue();
+      }
+
+      // Each partition leaves the index after its last element in its offset, which shows that it finished.
+      final List< Runnable > scatters = new ArrayList<>( extents.length );
+      for( int p = 0; p < extents.length; p++ )
+      {
+         final int partition = p;
+         scatters.add( new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               final Extent extent = extents[ partition ];
+               int to = offsets[ partition ];
+               for( int i = extent.getFirst(); i <= extent.getLast(); i++ )
+               {
+                  if( keep( i ) )
+                  {
+                     move( i, to++ );
+                  }
+                  else
+                  {
+                     drop( i );
+                  }
+               }
+               offsets[ partition ] = to;
+            }
+         } );
+      }
+      this.executor.executeTasks( scatters );
+
+      int end = 0;
+      for( int p = 0; p < extents.length; p++ )
+      {
+         end += counts.get( p ).intValue();
+         if( offsets[ p ] != end )
+         {
+            throw new IllegalStateException();
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Determines whether an element is kept. This must give the same answer each time it is called for an element during a
+    * compaction.
+    *
+    * @param index the index of the element in the input.
+    * @return <code>true</code> to keep the element; <code>false</code> to remove it.
+    */
+   protected abstract boolean keep( int index );
+
+   /**
+    * Moves an element that is kept to the output. Elements of different partitions are moved on different threads.
+    *
+    * @param from the index of the element in the input.
+    * @param to the index of the element in the output.
+    */
+   protected abstract void move( int from, int to );
+
+   /**
+    * Called for each element that is removed, on the thread of its partition. Does nothing by default.
+    *
+    * @param from the index of the element in the input.
+    */
+   protected void drop( final int from )
+   {
+      // Nothing to do by default
+   }
+}
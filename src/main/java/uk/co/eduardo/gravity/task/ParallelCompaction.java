@@ -0,0 +1,115 @@
+package uk.co.eduardo.gravity.task;
+
+/**
+ * Removes elements from an array on multiple threads, keeping the rest in their original order.
+ * <p>
+ * This is an {@link IndexCompaction} of the array: each partition counts the elements that it keeps, an exclusive prefix sum of
+ * the counts gives the index in the output at which each partition starts, and then every partition copies its elements to the
+ * output at the same time. By default the elements that are kept are those that are not <code>null</code>; subclasses may
+ * override {@link #keep(Object)} to remove others as well.
+ * <p>
+ * The compaction records where each element went, so that anything that refers to the elements by index can be updated
+ * afterwards. An instance reuses its arrays from one compaction to the next, so it must not run more than one compaction at once.
+ *
+ * @author Ed
+ * @param <T> the type of the elements.
+ */
+public class ParallelCompaction< T >
+{
+   private final IndexCompaction indices;
+
+   private int[] mapping = new int[ 0 ];
+
+   private T[] source;
+
+   private T[] target;
+
+   /**
+    * Initializes a new ParallelCompaction object.
+    *
+    * @param executor the executor on which to run the compactions.
+    */
+   public ParallelCompaction( final PartitionExecutor executor )
+   {
+      // The arrays are set before each compaction starts, and the executor publishes them to the threads that it runs on.
+      this.indices = new IndexCompaction( executor )
+      {
+         @Override
+         protected boolean keep( final int index )
+         {
+            return ParallelCompaction.this.keep( ParallelCompaction.this.source[ index ] );
+         }
+
+         @Override
+         protected void move( final int from, final int to )
+         {
+            ParallelCompaction.this.target[ to ] = ParallelCompaction.this.source[ from ];
+            ParallelCompaction.this.mapping[ from ] = to;
+         }
+
+         @Override
+         protected void drop( final int from )
+         {
+            ParallelCompaction.this.mapping[ from ] = -1;
+         }
+      };
+   }
+
+   /**
+    * Copies the elements that are kept from the start of one array to the start of another, in the same order. The rest of the
+    * target is left as it was.
+    *
+    * @param source the array from which to copy.
+    * @param length the number of elements at the start of the source to compact.
+    * @param target the array to which to copy, which must not be the source.
+    * @return the number of elements that were kept.
+    * @throws IllegalStateException if any partition failed, in which case the target and the mapping are incomplete.
+    */
+   public int compact( final T[] source, final int length, final T[] target )
+   {
+      if( ( source == target ) || ( length < 0 ) || ( length > source.length ) || ( length > target.length ) )
+      {
+         throw new IllegalArgumentException();
+      }
+
+      if( this.mapping.length < length )
+      {
+         this.mapping = new int[ length ];
+      }
+      this.source = source;
+      this.target = target;
+      try
+      {
+         return this.indices.compact( length );
+      }
+      finally
+      {
+         this.source = null;
+         this.target = null;
+      }
+   }
+
+   /**
+    * Gets where each element went in the last compaction. The element that was at index <code>i</code> in the source is at the
+    * index given by element <code>i</code> in the target, or -1 if it was removed. Only the elements up to the length of the last
+    * compaction are meaningful, and the array is overwritten by the next compaction.
+    *
+    * @return the mapping from old indices to new indices.
+    */
+   public int[] getMapping()
+   {
+      return this.mapping;
+   }
+
+   /**
+    * Determines whether an element is kept. This must give the same answer each time it is called for an element during a
+    * compaction.
+    *
+    * @param element the element, which may be <code>null</code>.
+    * @return <code>true</code> to keep the element; <code>false</code> to remove it.
+    */
+   protected boolean keep( final T element )
+   {
+      return element != null;
+   }
+}
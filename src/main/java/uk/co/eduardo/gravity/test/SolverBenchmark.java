@@ -0,0 +1,156 @@
+package uk.co.eduardo.gravity.test;
+
+import java.util.List;
+import java.util.Random;
+
+import uk.co.eduardo.gravity.app.OrbitalBodyFactory;
+import uk.co.eduardo.gravity.app.RandomBodyFactory;
+import uk.co.eduardo.gravity.app.Settings;
+import uk.co.eduardo.gravity.force.BarnesHutSolver;
+import uk.co.eduardo.gravity.force.DirectSolver;
+import uk.co.eduardo.gravity.force.FmmSolver;
+import uk.co.eduardo.gravity.force.ForceSolver;
+import uk.co.eduardo.gravity.math.Body;
+import uk.co.eduardo.gravity.task.DefaultPartitionExecutor;
+import uk.co.eduardo.gravity.task.Extent;
+import uk.co.eduardo.gravity.task.ExtentTask;
+import uk.co.eduardo.gravity.task.PartitionExecutor;
+
+/**
+ * Times the force solvers against each other for increasing numbers of bodies to show where each one becomes the fastest.
+ * <p>
+ * Each line of output gives the number of bodies followed by the time in milliseconds for one iteration and the RMS relative
+ * error against direct summation for each solver. Direct summation is only timed up to {@link #DirectLimit} bodies.
+ * <p>
+ * Pass "orbital" as the first argument to start from {@link OrbitalBodyFactory} rather than {@link RandomBodyFactory}.
+ *
+ * @author Ed
+ */
+public class SolverBenchmark
+{
+   private static final int[] BodyCounts =
+   {
+      1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000
+   };
+
+   private static final int DirectLimit = 50_000;
+
+   private static final int Repeats = 3;
+
+   private static final int ErrorSamples = 200;
+
+   /**
+    * @param args optionally "orbital" to use the orbital initial conditions.
+    */
+   public static void main( final String[] args )
+   {
+      final boolean orbital = ( args.length > 0 ) && "orbital".equals( args[ 0 ] ); //$NON-NLS-1$
+      final PartitionExecutor executor = DefaultPartitionExecutor.getInstance();
+
+      System.out.println( "bodies\tdirect\tbarnesHut\terror\tfmm\terror" ); //$NON-NLS-1$
+      for( final int count : BodyCounts )
+      {
+         final Settings settings = Settings.Default.setBodyCount( count );
+         final List< Body > bodies = orbital ? new OrbitalBodyFactory().create( settings )
+                                             : new RandomBodyFactory().create( settings );
+
+         final int n = bodies.size();
+         final double[] x = new double[ n ];
+         final double[] y = new double[ n ];
+         final double[] mass = new double[ n ];
+         for( int i = 0; i < n; i++ )
+         {
+            x[ i ] = bodies.get( i ).position.x;
+            y[ i ] = bodies.get( i ).position.y;
+            mass[ i ] = bodies.get( i ).mass;
+         }
+
+         final int[] samples = new int[ Math.min( n, ErrorSamples ) ];
+         final Random rng = new Random( 1 );
+         for( int i = 0; i < samples.length; i++ )
+         {
+            samples[ i ] = rng.nextInt( n );
+         }
+         final double[][] exact = sample( new DirectSolver(), x, y, mass, samples );
+
+         final String direct = n <= DirectLimit ? String.format( "%.1f", time( new DirectSolver(), x, y, mass, executor ) ) //$NON-NLS-1$
+                                                : "-"; //$NON-NLS-1$
+         final ForceSolver barnesHut = new BarnesHutSolver( executor,
+                                                            BarnesHutSolver.DefaultTheta,
+                                                            BarnesHutSolver.DefaultLeafCapacity,
+                                                            false );
+         final ForceSolver fmm = new FmmSolver( executor );
+
+         System.out.printf( "%d\t%s\t%.1f\t%.2e\t%.1f\t%.2e\n", //$NON-NLS-1$
+                            n,
+                            direct,
+                            time( barnesHut, x, y, mass, executor ),
+                            error( sample( barnesHut, x, y, mass, samples ), exact ),
+                            time( fmm, x, y, mass, executor ),
+                            error( sample( fmm, x, y, mass, samples ), exact ) );
+      }
+   }
+
+   private static double time( final ForceSolver solver,
+                               final double[] x,
+                               final double[] y,
+                               final double[] mass,
+                               final PartitionExecutor executor )
+   {
+      final double[] ax = new double[ x.length ];
+      final double[] ay = new double[ x.length ];
+
+      double best = Double.POSITIVE_INFINITY;
+      for( int repeat = 0; repeat < Repeats; repeat++ )
+      {
+         final long start = System.nanoTime();
+         solver.prepare( x, y, mass, x.length );
+         executor.partitionTask( new Extent( 0, x.length - 1 ), new ExtentTask()
+         {
+            @Override
+            public void execute( final Extent extent )
+            {
+               solver.accelerate( extent, ax, ay );
+            }
+         } );
+         best = Math.min( best, ( System.nanoTime() - start ) / 1_000_000d );
+      }
+      return best;
+   }
+
+   private static double[][] sample( final ForceSolver solver,
+                                     final double[] x,
+                                     final double[] y,
+                                     final double[] mass,
+                                     final int[] samples )
+   {
+      final double[] ax = new double[ x.length ];
+      final double[] ay = new double[ x.length ];
+      solver.prepare( x, y, mass, x.length );
+
+      final double[][] result = new double[ 2 ][ samples.length ];
+      for( int i = 0; i < samples.length; i++ )
+      {
+         solver.accelerate( new Extent( samples[ i ], samples[ i ] ), ax, ay );
+         result[ 0 ][ i ] = ax[ samples[ i ] ];
+         result[ 1 ][ i ] = ay[ samples[ i ] ];
+      }
+      return result;
+   }
+
+   private static double error( final double[][] approximate, final double[][] exact )
+   {
+      double sum = 0;
+      for( int i = 0; i < exact[ 0 ].length; i++ )
+      {
+         final double dx = approximate[ 0 ][ i ] - exact[ 0 ][ i ];
+         final double dy = approximate[ 1 ][ i ] - exact[ 1 ][ i ];
+         final double magnitude2 = ( exact[ 0 ][ i ] * exact[ 0 ][ i ] ) + ( exact[ 1 ][ i ] * exact[ 1 ][ i ] );
+         if( magnitude2 > 0 )
+         {
+            sum += ( ( dx * dx ) + ( dy * dy ) ) / magnitude2;
+         }
+      }
+      return Math.sqrt( sum / exact[ 0 ].length );
+   }
+}
@@ -51,9 +51,9 @@ public class Test
       final Vector2 p2 = p1.add( Matrix2.rotation( 0 ).mul( new Vector2( 1, 0 ) ).mul( d ) );
       final Vector2 p3 = p1.add( Matrix2.rotation( Math.toRadians( 60 ) ).mul( new Vector2( 1, 0 ) ).mul( d * 1.1 ) );
 
-      final List< Body > bodies = Arrays.asList( new Body( 20001, 5, p1, Vector2.Zero ),
-                                                 new Body( 20000, 5, p2, Vector2.Zero ),
-                                                 new Body( 19999, 5, p3, Vector2.Zero ) );
+      final List< Body > bodies = Arrays.asList( new Body( 0, 20001, 5, p1, Vector2.Zero ),
+                                                 new Body( 1, 20000, 5, p2, Vector2.Zero ),
+                                                 new Body( 2, 19999, 5, p3, Vector2.Zero ) );
 
       final JFrame frame = new JFrame();
       frame.setDefaultCloseOperation( WindowConstants.DISPOSE_ON_CLOSE );
@@ -90,7 +90,8 @@ public class Test
                   {
                      final Body b = TestComponent.this.bodies.get( 1 );
                      TestComponent.this.bodies.set( 1,
-                                                    new Body( b.mass,
+                                                    new Body( b.id,
+                                                              b.mass,
                                                               b.density,
                                                               new Vector2( b.position.x - 10, b.position.y ),
                                                               b.velocity ) );
@@ -0,0 +1,103 @@
+package uk.co.eduardo.gravity.force;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import uk.co.eduardo.gravity.math.Constants;
+import uk.co.eduardo.gravity.task.Extent;
+
+/**
+ * Calculates the exact gravitational acceleration by summing over every other body, using the Vector API to process as many
+ * sources at a time as the preferred vector width allows.
+ * <p>
+ * This class needs the jdk.incubator.vector module, so it is compiled separately and only ever loaded through
+ * {@link SimdDirectSolver}.
+ *
+ * @author Ed
+ */
+public class VectorDirectSolver implements ForceSolver
+{
+   private static final VectorSpecies< Double > Species = DoubleVector.SPECIES_PREFERRED;
+
+   private double[] x = new double[ 0 ];
+
+   private double[] y = new double[ 0 ];
+
+   private double[] gm = new double[ 0 ];
+
+   private int count;
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void prepare( final double[] x, final double[] y, final double[] mass, final int count )
+   {
+      if( this.x.length < count )
+      {
+         this.x = new double[ count ];
+         this.y = new double[ count ];
+         this.gm = new double[ count ];
+      }
+      System.arraycopy( x, 0, this.x, 0, count );
+      System.arraycopy( y, 0, this.y, 0, count );
+      for( int i = 0; i < count; i++ )
+      {
+         this.gm[ i ] = Constants.G * mass[ i ];
+      }
+      this.count = count;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void accelerate( final Extent extent, final double[] ax, final double[] ay )
+   {
+      final int lanes = Species.loopBound( this.count );
+      final DoubleVector zero = DoubleVector.zero( Species );
+
+      for( final int index : extent )
+      {
+         final double bx = this.x[ index ];
+         final double by = this.y[ index ];
+         final DoubleVector targetX = DoubleVector.broadcast( Species, bx );
+         final DoubleVector targetY = DoubleVector.broadcast( Species, by );
+
+         DoubleVector sumX = zero;
+         DoubleVector sumY = zero;
+         int other = 0;
+         for( ; other < lanes; other += Species.length() )
+         {
+            final DoubleVector dx = DoubleVector.fromArray( Species, this.x, other ).sub( targetX );
+            final DoubleVector dy = DoubleVector.fromArray( Species, this.y, other ).sub( targetY );
+            final DoubleVector r2 = dx.mul( dx ).add( dy.mul( dy ) );
+
+            // The body itself, and any body at the same position, is masked out rather than branched around.
+            final VectorMask< Double > apart = r2.compare( VectorOperators.GT, 0 );
+            final DoubleVector a = DoubleVector.fromArray( Species, this.gm, other )
+                                               .div( r2.mul( r2.lanewise( VectorOperators.SQRT ) ) );
+            sumX = sumX.add( a.mul( dx ), apart );
+            sumY = sumY.add( a.mul( dy ), apart );
+         }
+
+         double scalarX = sumX.reduceLanes( VectorOperators.ADD );
+         double scalarY = sumY.reduceLanes( VectorOperators.ADD );
+         for( ; other < this.count; other++ )
+         {
+            final double dx = this.x[ other ] - bx;
+            final double dy = this.y[ other ] - by;
+            final double r2 = ( dx * dx ) + ( dy * dy );
+            if( r2 > 0 )
+            {
+               final double a = this.gm[ other ] / ( r2 * Math.sqrt( r2 ) );
+               scalarX += a * dx;
+               scalarY += a * dy;
+            }
+         }
+         ax[ index ] = scalarX;
+         ay[ index ] = scalarY;
+      }
+   }
+}